@@ -0,0 +1,29 @@
+package gitlet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Runs the JMH benchmarks, writing their results as JSON.
+ *
+ *  Usage: java -jar benchmarks/target/benchmarks.jar [JMH OPTIONS]
+ *  Takes the options of JMH's own runner (e.g. "GitletBenchmark.log -p commits=1000" to run one
+ *  benchmark at one size, or -h to list them). Unless told otherwise with -rf and -rff, results
+ *  are written as JSON to jmh-result.json, so runs of different releases can be compared.
+ *  @author procrastin
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf")) {
+            options.add(0, "-rf");
+            options.add(1, "json");
+        }
+        if (!options.contains("-rff")) {
+            options.add(0, "-rff");
+            options.add(1, "jmh-result.json");
+        }
+        org.openjdk.jmh.Main.main(options.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,175 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** JMH benchmarks of the core operations, on generated repositories of FILES files (100 per
+ *  directory) and COMMITS commits on master.
+ *
+ *  Master changes a file of the first half of the files in each commit. Branch other leaves
+ *  master halfway and has 10 commits changing files of the second half, so merging it never
+ *  conflicts. Benchmarks that change the repository undo their change where that is cheap:
+ *  merge resets master back and checkout returns to master, so they are timed together with
+ *  that; add and commit let the repository grow, by one blob (and commit) per call.
+ *  @author procrastin
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GitletBenchmark {
+
+    /** Commits on branch other */
+    private static final int OTHER_COMMITS = 10;
+
+    @Param({"100", "1000"})
+    public int files;
+
+    @Param({"100", "1000"})
+    public int commits;
+
+    private File root;
+    private GitletRepository repository;
+    /** Head of master once the repository is made */
+    private String head;
+    /** Abbreviated id of a commit halfway down master */
+    private String abbreviation;
+    /** Number of changes made by add and commit so far */
+    private int changes;
+
+    @Setup(Level.Trial)
+    public void makeRepository() throws IOException {
+        root = Files.createTempDirectory("gitlet-jmh").toFile();
+        repository = new GitletRepository(root);
+        repository.init();
+        for (int i = 0; i < files; i += 1) {
+            write(i, "file " + i + "\n");
+            repository.add(path(i));
+        }
+        head = repository.commit("Add " + files + " files");
+
+        int half = Math.max(1, files / 2);
+        for (int c = 1; c < commits; c += 1) {
+            if (c == commits / 2) {
+                repository.branch("other");
+                abbreviation = head.substring(0, 7);
+            }
+            change(c % half, "master " + c);
+            head = repository.commit("Change " + c + " on master");
+        }
+        if (abbreviation == null) {
+            repository.branch("other");
+            abbreviation = head.substring(0, 7);
+        }
+
+        repository.checkoutBranch("other");
+        for (int c = 0; c < OTHER_COMMITS; c += 1) {
+            change(half + c % Math.max(1, files - half), "other " + c);
+            repository.commit("Change " + c + " on other");
+        }
+        repository.checkoutBranch("master");
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteRepository() {
+        delete(root);
+    }
+
+    @Benchmark
+    public void add() throws IOException {
+        changes += 1;
+        write(0, "change " + changes + "\n");
+        repository.add(path(0));
+    }
+
+    /** Commits one changed file, which is staged first */
+    @Benchmark
+    public String commit() throws IOException {
+        changes += 1;
+        change(0, "change " + changes);
+        return repository.commit("Change " + changes);
+    }
+
+    @Benchmark
+    public Status status() {
+        return repository.status();
+    }
+
+    @Benchmark
+    public void log(Blackhole blackhole) {
+        repository.log(Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, blackhole::consume);
+    }
+
+    @Benchmark
+    public String splitPoint() {
+        return repository.splitPoint("other");
+    }
+
+    /** Merges other into master, then resets master back */
+    @Benchmark
+    public MergeResult merge() {
+        MergeResult result = repository.merge("other");
+        repository.reset(head);
+        return result;
+    }
+
+    /** Checks out other, then master again */
+    @Benchmark
+    public void checkoutBranch() {
+        repository.checkoutBranch("other");
+        repository.checkoutBranch("master");
+    }
+
+    @Benchmark
+    public String resolveCommit() {
+        return repository.resolveCommit(abbreviation);
+    }
+
+    /** Writes CONTENTS to file I and stages it */
+    private void change(int i, String contents) throws IOException {
+        write(i, contents + "\n");
+        repository.add(path(i));
+    }
+
+    /** Writes CONTENTS to file I */
+    private void write(int i, String contents) throws IOException {
+        File file = new File(root, path(i));
+        file.getParentFile().mkdirs();
+        Files.writeString(file.toPath(), contents);
+    }
+
+    /** Returns the path of file I */
+    private static String path(int i) {
+        return "dir" + (i / 100) + "/file" + i + ".txt";
+    }
+
+    /** Deletes FILE and everything under it */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
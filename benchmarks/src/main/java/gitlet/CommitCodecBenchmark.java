@@ -0,0 +1,99 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.List;
+
+/** Measures reading and writing commits in the compact format and as serialized Commits.
+ *
+ *  Usage: java gitlet.CommitCodecBenchmark [ROUNDS]
+ *  Makes a repository with a merge commit, then reports the stored size of that commit in
+ *  both formats and the time to encode it and to decode it (from memory and from its file,
+ *  the latter being the Utils.readObject path used before) ROUNDS times (200k by default).
+ *  @author procrastin
+ */
+public class CommitCodecBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+
+        File root = Files.createTempDirectory("gitlet-codec").toFile();
+        GitletRepository repository = new GitletRepository(root);
+        repository.init();
+        Files.writeString(new File(root, "a.txt").toPath(), "a\n");
+        repository.add("a.txt");
+        repository.commit("Add a.txt");
+        repository.branch("other");
+        Files.writeString(new File(root, "b.txt").toPath(), "b\n");
+        repository.add("b.txt");
+        repository.commit("Add b.txt, which the other branch doesn't have yet");
+        repository.checkoutBranch("other");
+        Files.writeString(new File(root, "c.txt").toPath(), "c\n");
+        repository.add("c.txt");
+        repository.commit("Add c.txt on the other branch");
+        repository.checkoutBranch("master");
+        repository.merge("other");
+        List<LogEntry> log = repository.log();
+        String id = log.get(0).getID();
+
+        byte[] compact = repository.commitStore.read(id);
+        Commit commit = Commit.decode(compact);
+        byte[] serialized = Utils.serialize(commit);
+        File compactFile = new File(root, "compact");
+        File serializedFile = new File(root, "serialized");
+        Utils.writeContents(compactFile, compact);
+        Utils.writeContents(serializedFile, serialized);
+
+        System.out.printf("%12s %8s %12s %12s %12s%n",
+                "format", "bytes", "encode ns", "decode ns", "read file us");
+        for (int pass = 0; pass < 2; pass += 1) {
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i += 1) {
+                commit.encode();
+            }
+            double encodeNs = (double) (System.nanoTime() - start) / rounds;
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i += 1) {
+                Commit.decode(compact);
+            }
+            double decodeNs = (double) (System.nanoTime() - start) / rounds;
+            start = System.nanoTime();
+            for (int i = 0; i < rounds / 10; i += 1) {
+                Commit.decode(Utils.readContents(compactFile));
+            }
+            double fileUs = (System.nanoTime() - start) / 1e3 / (rounds / 10);
+            System.out.printf("%12s %8d %12.0f %12.0f %12.1f%n",
+                    "compact", compact.length, encodeNs, decodeNs, fileUs);
+
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i += 1) {
+                Utils.serialize(commit);
+            }
+            encodeNs = (double) (System.nanoTime() - start) / rounds;
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i += 1) {
+                Utils.deserialize(serialized, Commit.class);
+            }
+            decodeNs = (double) (System.nanoTime() - start) / rounds;
+            start = System.nanoTime();
+            for (int i = 0; i < rounds / 10; i += 1) {
+                Utils.readObject(serializedFile, Commit.class);
+            }
+            fileUs = (System.nanoTime() - start) / 1e3 / (rounds / 10);
+            System.out.printf("%12s %8d %12.0f %12.0f %12.1f%n",
+                    "serialized", serialized.length, encodeNs, decodeNs, fileUs);
+        }
+        delete(root);
+    }
+
+    /** Deletes FILE and everything under it */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
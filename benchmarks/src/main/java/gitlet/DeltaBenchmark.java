@@ -0,0 +1,68 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Measures what delta-compressed blobs cost and save.
+ *
+ *  Usage: java gitlet.DeltaBenchmark [LINES] [VERSIONS] [CHANGES]
+ *  Stores VERSIONS versions of a LINES-line file, changing CHANGES random lines between
+ *  versions, in a scratch repository. Reports the stored size against the size of the
+ *  versions stored whole, and the read latency of each position in the delta chain.
+ *  @author procrastin
+ */
+public class DeltaBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        int versions = args.length > 1 ? Integer.parseInt(args[1]) : 50;
+        int changes = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        // Scratch repository; must be set up before Repository is first used
+        File dir = Files.createTempDirectory("gitlet-delta").toFile();
+        System.setProperty("user.dir", dir.getPath());
+        Repository.init(Hashing.Algorithm.SHA1);
+
+        // Write every version as the next version of the same file
+        Random random = new Random(61);
+        List<String> file = new ArrayList<>();
+        for (int i = 0; i < lines; i += 1) {
+            file.add("line " + i + " " + Long.toHexString(random.nextLong()));
+        }
+        List<String> ids = new ArrayList<>();
+        long wholeBytes = 0;
+        long storedBytes = 0;
+        String previous = null;
+        for (int v = 0; v < versions; v += 1) {
+            for (int c = 0; c < changes; c += 1) {
+                file.set(random.nextInt(lines), "changed in " + v + " " + Long.toHexString(random.nextLong()));
+            }
+            Blob blob = new Blob(String.join("\n", file).getBytes(StandardCharsets.UTF_8));
+            blob.saveBlob(previous);
+            previous = blob.hash();
+            ids.add(previous);
+            wholeBytes += Blob.returnBlobBytes(previous).length;
+            storedBytes += Repository.blobStore().read(previous).length;
+        }
+
+        System.out.printf("%d versions of %d lines, %d changed lines per version%n", versions, lines, changes);
+        System.out.printf("stored whole:   %,d bytes%n", wholeBytes);
+        System.out.printf("stored deltas:  %,d bytes (ratio %.1fx)%n", storedBytes, (double) wholeBytes / storedBytes);
+
+        // Read latency by position in the chain (position 0 is a blob stored whole)
+        int rounds = 200;
+        for (int depth = 0; depth <= Blob.MAX_DELTA_DEPTH && depth < ids.size(); depth += 1) {
+            String id = ids.get(depth);
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r += 1) {
+                Blob.returnBlobContent(id);
+            }
+            double micros = (System.nanoTime() - start) / 1000.0 / rounds;
+            System.out.printf("read at chain depth %d: %.1f us%n", depth, micros);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/** Measures a commit writing many objects at each durability level.
+ *
+ *  Usage: java gitlet.DurabilityBenchmark [DIRECTORIES]
+ *  For each level, makes a repository with one file in each of DIRECTORIES directories (1000
+ *  by default) and stages them all, then times the commit, which writes a tree per directory,
+ *  the commit and the branch. Numbers depend on the disk: on tmpfs syncing costs nothing.
+ *  @author procrastin
+ */
+public class DurabilityBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int directories = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+
+        System.out.printf("%10s %12s %12s%n", "level", "objects", "commit ms");
+        for (int pass = 0; pass < 2; pass += 1) {
+            for (String level : new String[] {"none", "batched", "strict"}) {
+                File root = Files.createTempDirectory("gitlet-durability").toFile();
+                GitletRepository repository = new GitletRepository(root);
+                repository.init();
+                Files.writeString(repository.configFile.toPath(), "core.durability = " + level + "\n");
+                for (int i = 0; i < directories; i += 1) {
+                    File file = Utils.join(root, "dir" + i, "file.txt");
+                    file.getParentFile().mkdirs();
+                    Files.writeString(file.toPath(), "file " + i + "\n");
+                    repository.add("dir" + i + "/file.txt");
+                }
+
+                long start = System.nanoTime();
+                repository.commit("Add " + directories + " directories");
+                double commitMs = (System.nanoTime() - start) / 1e6;
+                System.out.printf("%10s %12d %12.1f%n", level, directories + 2, commitMs);
+                delete(root);
+            }
+        }
+    }
+
+    /** Deletes FILE and everything under it */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,131 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Formatter;
+import java.util.Random;
+
+/** Measures hashing, as object ids are made, before and after Hashing.
+ *
+ *  Usage: java gitlet.HashBenchmark [ITERATIONS]
+ *  Hashes short strings (like the text commit ids are made from), 4KB arrays (like small
+ *  blobs) and a 1MB file (like a large working file) ITERATIONS times each (100000 by default,
+ *  a hundredth of that for the file), with the former Utils.sha1 (a new MessageDigest and a
+ *  Formatter per hash, a new buffer per stream) and with Hashing using SHA-1 and SHA-256.
+ *  @author procrastin
+ */
+public class HashBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        String[] messages = new String[1024];
+        for (int i = 0; i < messages.length; i += 1) {
+            messages[i] = "commit" + Utils.sha1("parent" + i) + "Change number " + i + false;
+        }
+        byte[][] arrays = new byte[64][4096];
+        Random random = new Random(1);
+        for (byte[] array : arrays) {
+            random.nextBytes(array);
+        }
+        File file = File.createTempFile("gitlet-hash", ".bin");
+        file.deleteOnExit();
+        byte[] contents = new byte[1 << 20];
+        random.nextBytes(contents);
+        Files.write(file.toPath(), contents);
+        int fileIterations = Math.max(1, iterations / 100);
+
+        System.out.printf("%10s %10s %14s%n", "input", "hashing", "ns per hash");
+        for (int pass = 0; pass < 3; pass += 1) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i += 1) {
+                legacySha1(messages[i & 1023]);
+            }
+            report("string", "legacy", start, iterations);
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i += 1) {
+                Hashing.start(Hashing.Algorithm.SHA1).update(messages[i & 1023]).hex();
+            }
+            report("string", "sha1", start, iterations);
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i += 1) {
+                Hashing.start(Hashing.Algorithm.SHA256).update(messages[i & 1023]).hex();
+            }
+            report("string", "sha256", start, iterations);
+
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i += 1) {
+                legacySha1("blob", arrays[i & 63]);
+            }
+            report("4KB", "legacy", start, iterations);
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i += 1) {
+                Hashing.start(Hashing.Algorithm.SHA1).update("blob").update(arrays[i & 63]).hex();
+            }
+            report("4KB", "sha1", start, iterations);
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; i += 1) {
+                Hashing.start(Hashing.Algorithm.SHA256).update("blob").update(arrays[i & 63]).hex();
+            }
+            report("4KB", "sha256", start, iterations);
+
+            start = System.nanoTime();
+            for (int i = 0; i < fileIterations; i += 1) {
+                legacySha1("blob", new FileInputStream(file));
+            }
+            report("1MB file", "legacy", start, fileIterations);
+            start = System.nanoTime();
+            for (int i = 0; i < fileIterations; i += 1) {
+                Hashing.start(Hashing.Algorithm.SHA1).update("blob").update(file).hex();
+            }
+            report("1MB file", "sha1", start, fileIterations);
+            start = System.nanoTime();
+            for (int i = 0; i < fileIterations; i += 1) {
+                Hashing.start(Hashing.Algorithm.SHA256).update("blob").update(file).hex();
+            }
+            report("1MB file", "sha256", start, fileIterations);
+        }
+    }
+
+    /** Prints the time per hash of COUNT hashes of INPUT with HASHING, begun at START */
+    private static void report(String input, String hashing, long start, int count) {
+        System.out.printf("%10s %10s %14.0f%n", input, hashing, (System.nanoTime() - start) / (double) count);
+    }
+
+    /** Utils.sha1 as it was: the SHA-1 hash of the concatenation of VALS */
+    private static String legacySha1(Object... vals) throws NoSuchAlgorithmException {
+        MessageDigest md = MessageDigest.getInstance("SHA-1");
+        for (Object val : vals) {
+            if (val instanceof byte[]) {
+                md.update((byte[]) val);
+            } else {
+                md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        Formatter result = new Formatter();
+        for (byte b : md.digest()) {
+            result.format("%02x", b);
+        }
+        return result.toString();
+    }
+
+    /** Utils.sha1 as it was: the SHA-1 hash of PREFIX followed by every byte of IN */
+    private static String legacySha1(String prefix, InputStream in)
+            throws NoSuchAlgorithmException, IOException {
+        try (InputStream stream = in) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(prefix.getBytes(StandardCharsets.UTF_8));
+            byte[] buffer = new byte[64 * 1024];
+            int n;
+            while ((n = stream.read(buffer)) > 0) {
+                md.update(buffer, 0, n);
+            }
+            return Utils.toHex(md.digest());
+        }
+    }
+}
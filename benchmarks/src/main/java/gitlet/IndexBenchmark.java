@@ -0,0 +1,95 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/** Measures how long the index takes to load and save as it grows.
+ *
+ *  Usage: java gitlet.IndexBenchmark [ENTRIES...]
+ *  For each size (10k, 100k and 1M entries by default), builds an index with stat data for
+ *  that many files, 1% of them staged, and times writing and reading it in the index format
+ *  and as a serialized Stage (the format used before).
+ *  @author procrastin
+ */
+public class IndexBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {10000, 100000, 1000000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i += 1) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+        File dir = Files.createTempDirectory("gitlet-index").toFile();
+        File index = new File(dir, "INDEX");
+        File serialized = new File(dir, "INDEX.ser");
+
+        System.out.printf("%10s %12s %10s %10s %12s %10s %10s%n",
+                "entries", "index bytes", "save ms", "load ms", "ser. bytes", "save ms", "load ms");
+        // Warm up both formats so the first size isn't timed in the interpreter
+        Stage warmup = build(10000);
+        for (int r = 0; r < 20; r += 1) {
+            Stage.write(warmup, index);
+            Stage.read(index);
+            Utils.writeObject(serialized, warmup);
+            Stage.read(serialized);
+        }
+
+        for (int size : sizes) {
+            Stage stage = build(size);
+            int rounds = Math.max(1, 1000000 / size);
+
+            System.gc();
+            long start = System.nanoTime();
+            for (int r = 0; r < rounds; r += 1) {
+                Stage.write(stage, index);
+            }
+            double saveMs = (System.nanoTime() - start) / 1e6 / rounds;
+            System.gc();
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r += 1) {
+                Stage.read(index);
+            }
+            double loadMs = (System.nanoTime() - start) / 1e6 / rounds;
+
+            System.gc();
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r += 1) {
+                Utils.writeObject(serialized, stage);
+            }
+            double serSaveMs = (System.nanoTime() - start) / 1e6 / rounds;
+            System.gc();
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r += 1) {
+                Stage.read(serialized);
+            }
+            double serLoadMs = (System.nanoTime() - start) / 1e6 / rounds;
+
+            System.out.printf("%10d %12d %10.1f %10.1f %12d %10.1f %10.1f%n", size, index.length(),
+                    saveMs, loadMs, serialized.length(), serSaveMs, serLoadMs);
+        }
+        index.delete();
+        serialized.delete();
+        dir.delete();
+    }
+
+    /** Returns an index with stat data for SIZE files, spread over directories of 100 files */
+    private static Stage build(int size) {
+        Stage stage = new Stage();
+        for (int i = 0; i < size; i += 1) {
+            String path = "src/dir" + (i / 100) + "/file" + i + ".java";
+            Stage.StatEntry stat = new Stage.StatEntry();
+            stat.size = 1000 + i % 5000;
+            stat.mtime = 1700000000000L + i;
+            stat.inode = 100000 + i;
+            stat.hashedAt = 1700000100000L;
+            stat.hash = Utils.sha1("file", Integer.toString(i));
+            stage.recordStat(path, stat);
+            if (i % 100 == 0) {
+                stage.additionStage.put(path, stat.hash);
+            }
+        }
+        return stage;
+    }
+}
@@ -0,0 +1,63 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Measures log -n 20 as the history grows.
+ *
+ *  Usage: java gitlet.LogBenchmark [COMMITS...]
+ *  Grows a linear commit graph, with commit metadata, to each size (1k, 100k and 1M commits by
+ *  default) and times opening the graph as a new process would, then listing the latest 20
+ *  commits from the head.
+ *  @author procrastin
+ */
+public class LogBenchmark {
+
+    /** Commits listed */
+    private static final int COUNT = 20;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {1000, 100000, 1000000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i += 1) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        File file = File.createTempFile("gitlet-graph", null);
+        file.delete();
+        CommitGraph graph = new CommitGraph(file);
+        int head = CommitGraph.NONE;
+        System.out.printf("%10s %12s %12s%n", "commits", "build s", "log -n 20 ms");
+        for (int size : sizes) {
+            long start = System.nanoTime();
+            while (graph.size() < size) {
+                int serial = graph.size();
+                head = graph.append(Utils.sha1("commit", Integer.toString(serial)), head,
+                        CommitGraph.NONE, 1700000000L + serial);
+                graph.putMetadata(head, "Tue Nov 14 22:13:20 2023 +0000", "commit number " + serial);
+            }
+            double buildS = (System.nanoTime() - start) / 1e9;
+
+            String headID = graph.id(head);
+            int rounds = 100;
+            List<LogEntry> entries = new ArrayList<>();
+            start = System.nanoTime();
+            for (int r = 0; r < rounds; r += 1) {
+                entries.clear();
+                CommitGraph reopened = new CommitGraph(file);
+                for (int position = reopened.position(headID); position != CommitGraph.NONE
+                        && entries.size() < COUNT; position = reopened.parent(position)) {
+                    entries.add(reopened.entry(position));
+                }
+            }
+            double logMs = (System.nanoTime() - start) / 1e6 / rounds;
+            System.out.printf("%10d %12.1f %12.3f%n", size, buildS, logMs);
+        }
+        new File(file.getPath() + "-meta").delete();
+        new File(file.getPath() + "-meta.idx").delete();
+        file.delete();
+    }
+}
@@ -0,0 +1,78 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/** Measures split-point computation on deep, criss-crossed histories.
+ *
+ *  Usage: java gitlet.MergeBaseBenchmark [COMMITS] [MERGE_INTERVAL] [DIVERGENCE]
+ *  Builds a commit graph of two branches of about COMMITS commits in total that merge into
+ *  each other in both directions (criss-cross) every MERGE_INTERVAL commits, then each add
+ *  DIVERGENCE more commits of their own. Reports the time to find their split point.
+ *  @author procrastin
+ */
+public class MergeBaseBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int commits = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int interval = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int divergence = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+
+        File file = File.createTempFile("gitlet-graph", null);
+        file.delete();
+        CommitGraph graph = new CommitGraph(file);
+
+        long start = System.nanoTime();
+        int[] serial = {0};
+        int root = graph.append(nextID(serial), CommitGraph.NONE, CommitGraph.NONE, 0);
+        int first = root;
+        int second = root;
+        while (graph.size() < commits) {
+            for (int i = 0; i < interval; i += 1) {
+                first = graph.append(nextID(serial), first, CommitGraph.NONE, graph.size());
+                second = graph.append(nextID(serial), second, CommitGraph.NONE, graph.size());
+            }
+            int mergedFirst = graph.append(nextID(serial), first, second, graph.size());
+            int mergedSecond = graph.append(nextID(serial), second, first, graph.size());
+            first = mergedFirst;
+            second = mergedSecond;
+        }
+        int splitFirst = first;
+        int splitSecond = second;
+        for (int i = 0; i < divergence; i += 1) {
+            first = graph.append(nextID(serial), first, CommitGraph.NONE, graph.size());
+            second = graph.append(nextID(serial), second, CommitGraph.NONE, graph.size());
+        }
+        System.out.printf("built %,d commits in %.0f ms (%,d bytes)%n", graph.size(),
+                (System.nanoTime() - start) / 1e6, file.length());
+
+        // Reopen so the timings include mapping the file and building the id lookup
+        start = System.nanoTime();
+        graph = new CommitGraph(file);
+        int position = graph.position(graph.id(first));
+        System.out.printf("open + id lookup: %.2f ms%n", (System.nanoTime() - start) / 1e6);
+
+        report("diverged heads", graph, position, second);
+        report("head and root", graph, first, root);
+        report("criss-cross pair", graph, splitFirst, splitSecond);
+        file.delete();
+    }
+
+    /** [HELPER METHOD] Times MergeBase.find between A and B */
+    private static void report(String name, CommitGraph graph, int a, int b) {
+        int rounds = 100;
+        int base = CommitGraph.NONE;
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i += 1) {
+            base = MergeBase.find(graph, a, b);
+        }
+        double millis = (System.nanoTime() - start) / 1e6 / rounds;
+        System.out.printf("%-17s %.3f ms  (split at generation %d)%n", name + ":", millis, graph.generation(base));
+    }
+
+    /** [HELPER METHOD] Returns a fresh fake commit id */
+    private static String nextID(int[] serial) {
+        serial[0] += 1;
+        return Utils.sha1("commit", Integer.toString(serial[0]));
+    }
+}
@@ -0,0 +1,121 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Random;
+
+/** Measures creating and looking up loose objects, sharded and in a single directory.
+ *
+ *  Usage: java gitlet.ObjectStoreBenchmark [OBJECTS...]
+ *  For each size (10k, 100k and 1M objects by default), writes that many small objects through
+ *  an ObjectStore (sharded by the first two hex digits of their id) and as files of a single
+ *  directory (the layout used before), then times reading 10k random objects back, checking
+ *  for 10k missing ones, and resolving 1k 8-digit prefixes.
+ *  @author procrastin
+ */
+public class ObjectStoreBenchmark {
+
+    /** Number of lookups timed */
+    private static final int LOOKUPS = 10000;
+    /** Number of prefixes resolved */
+    private static final int PREFIXES = 1000;
+
+    public static void main(String[] args) throws Exception {
+        int[] sizes = {10000, 100000, 1000000};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i += 1) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.printf("%10s %8s %12s %12s %12s %12s%n",
+                "objects", "layout", "create ms", "read us", "miss us", "prefix us");
+        for (int size : sizes) {
+            String[] ids = new String[size];
+            for (int i = 0; i < size; i += 1) {
+                ids[i] = Utils.sha1("object", Integer.toString(i));
+            }
+            File dir = Files.createTempDirectory("gitlet-objects").toFile();
+
+            // Sharded, through the store
+            File storeDir = new File(dir, "sharded");
+            ObjectStore store = new ObjectStore(storeDir);
+            long start = System.nanoTime();
+            for (int i = 0; i < size; i += 1) {
+                store.write(ids[i], contents(i));
+            }
+            double createMs = (System.nanoTime() - start) / 1e6;
+            Random random = new Random(size);
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i += 1) {
+                store.read(ids[random.nextInt(size)]);
+            }
+            double readUs = (System.nanoTime() - start) / 1e3 / LOOKUPS;
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i += 1) {
+                store.contains(Utils.sha1("missing", Integer.toString(i)));
+            }
+            double missUs = (System.nanoTime() - start) / 1e3 / LOOKUPS;
+            start = System.nanoTime();
+            for (int i = 0; i < PREFIXES; i += 1) {
+                store.idsStartingWith(ids[random.nextInt(size)].substring(0, 8), 2);
+            }
+            double prefixUs = (System.nanoTime() - start) / 1e3 / PREFIXES;
+            System.out.printf("%10d %8s %12.0f %12.1f %12.1f %12.1f%n",
+                    size, "sharded", createMs, readUs, missUs, prefixUs);
+
+            // Flat: one file per object, all in one directory
+            File flatDir = new File(dir, "flat");
+            flatDir.mkdirs();
+            start = System.nanoTime();
+            for (int i = 0; i < size; i += 1) {
+                Utils.writeContents(new File(flatDir, ids[i]), contents(i));
+            }
+            createMs = (System.nanoTime() - start) / 1e6;
+            random = new Random(size);
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i += 1) {
+                Utils.readContents(new File(flatDir, ids[random.nextInt(size)]));
+            }
+            readUs = (System.nanoTime() - start) / 1e3 / LOOKUPS;
+            start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i += 1) {
+                new File(flatDir, Utils.sha1("missing", Integer.toString(i))).isFile();
+            }
+            missUs = (System.nanoTime() - start) / 1e3 / LOOKUPS;
+            // Before prefix lookups, an abbreviation was resolved by listing the directory
+            int listings = Math.max(1, PREFIXES * 1000 / size);
+            start = System.nanoTime();
+            for (int i = 0; i < listings; i += 1) {
+                String prefix = ids[random.nextInt(size)].substring(0, 8);
+                for (String name : Utils.plainFilenamesIn(flatDir)) {
+                    if (name.startsWith(prefix)) {
+                        break;
+                    }
+                }
+            }
+            prefixUs = (System.nanoTime() - start) / 1e3 / listings;
+            System.out.printf("%10d %8s %12.0f %12.1f %12.1f %12.1f%n",
+                    size, "flat", createMs, readUs, missUs, prefixUs);
+
+            delete(dir);
+        }
+    }
+
+    /** Returns the contents of the Ith object */
+    private static byte[] contents(int i) {
+        return ("object " + i + "\n").getBytes();
+    }
+
+    /** Deletes FILE and everything under it */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
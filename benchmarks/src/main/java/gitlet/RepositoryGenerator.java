@@ -0,0 +1,503 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/** Generates a synthetic repository, for scale testing.
+ *
+ *  Usage: java gitlet.RepositoryGenerator [OPTIONS] DIRECTORY
+ *  Makes a repository in DIRECTORY, which must be empty or missing. Options (default in
+ *  brackets):
+ *      --commits=N       commits after the initial import, not counting merges [1000]
+ *      --files=N         files of the initial import, 100 per directory [1000]
+ *      --branches=N      branches besides master: branch-1, branch-2, ... [4]
+ *      --merges=N        merges of a branch into master, spread over the history [10]
+ *      --churn=R         fraction of --files each commit adds, changes or removes [0.01]
+ *      --median-size=N   median size of a file in bytes; sizes are log-normal [1024]
+ *      --size-spread=S   standard deviation of the log of the sizes [1.0]
+ *      --max-size=N      largest size of a file in bytes [1048576]
+ *      --seed=N          seed of every random choice [61]
+ *      --durability=L    core.durability of the repository [batched]
+ *      --bulk            write blobs, commits and refs directly, then check out master once,
+ *                        instead of running add, rm, commit, checkout and merge
+ *      --gc              pack the objects at the end
+ *  Then prints the time spent in each phase (write, add, commit, checkout, merge, ...).
+ *
+ *  The initial import is followed by runs of 1 to 8 commits on master or a branch. Each
+ *  commit changes max(1, churn * files) files: 80% are modified, 10% removed and 10% added.
+ *  Master and each branch own their own directories, and only change files there, so merges
+ *  never conflict; a branch that master has already merged (or that has no commits since it
+ *  was merged) isn't merged. Choices and contents come from the seed alone, so the same
+ *  options make the same history, with the same commit ids, whether --bulk is given or not.
+ *  For example, 100,000 commits or a million files:
+ *      java gitlet.RepositoryGenerator --bulk --commits=100000 --files=10000 /tmp/commits
+ *      java gitlet.RepositoryGenerator --bulk --commits=100 --files=1000000 \
+ *          --median-size=256 --churn=0.0001 --durability=none /tmp/files
+ *  @author procrastin
+ */
+public class RepositoryGenerator {
+
+    /** Words the contents of files are made of */
+    private static final String[] WORDS = {"gitlet", "commit", "branch", "merge", "blob", "tree",
+        "index", "stage", "checkout", "reset", "log", "status", "the", "a", "of", "and", "to",
+        "is", "in", "file", "version", "control", "system", "repository", "head", "split"};
+    /** Files per directory */
+    private static final int FILES_PER_DIRECTORY = 100;
+    /** Most objects a bulk import leaves pending before putting them in place */
+    private static final int BARRIER_INTERVAL = 4096;
+
+    private int commits = 1000;
+    private int files = 1000;
+    private int branches = 4;
+    private int merges = 10;
+    private double churn = 0.01;
+    private int medianSize = 1024;
+    private double sizeSpread = 1.0;
+    private int maxSize = 1 << 20;
+    private long seed = 61;
+    private String durability;
+    private boolean bulk;
+    private boolean gc;
+
+    private File root;
+    private GitletRepository repository;
+    private Random random;
+    /** Name of each owner of directories: master, then the branches */
+    private String[] names;
+    /** Directories of each owner */
+    private final List<List<String>> directories = new ArrayList<>();
+    /** Files of each owner, in no order */
+    private final List<List<String>> owned = new ArrayList<>();
+    /** Version of each file */
+    private final Map<String, Integer> versions = new HashMap<>();
+    /** Number of the next file added */
+    private int nextFile;
+    /** Whether each branch has commits master hasn't merged */
+    private boolean[] unmerged;
+    /** Branch checked out (not used by bulk imports) */
+    private String current = "master";
+    /** Head of each branch (bulk imports only) */
+    private String[] heads;
+    /** Latest commit of each branch that master has (bulk imports only) */
+    private String[] bases;
+    /** Changes of each branch master hasn't merged, null for removals (bulk imports only) */
+    private final List<Map<String, String>> changes = new ArrayList<>();
+    /** Objects written since the last barrier (bulk imports only) */
+    private int pendingObjects;
+    /** Commits written since the last barrier, recorded once they are in place (bulk imports
+     *  only) */
+    private final List<String> unrecorded = new ArrayList<>();
+    /** Merges made */
+    private int mergesMade;
+    /** Count and nanoseconds of each phase, in order of first use */
+    private final Map<String, long[]> phases = new LinkedHashMap<>();
+
+    public static void main(String[] args) throws Exception {
+        RepositoryGenerator generator = new RepositoryGenerator();
+        String directory = null;
+        for (String arg : args) {
+            int equals = arg.indexOf('=');
+            String name = equals < 0 ? arg : arg.substring(0, equals);
+            String value = equals < 0 ? null : arg.substring(equals + 1);
+            switch (name) {
+                case "--commits":
+                    generator.commits = Integer.parseInt(value);
+                    break;
+                case "--files":
+                    generator.files = Integer.parseInt(value);
+                    break;
+                case "--branches":
+                    generator.branches = Integer.parseInt(value);
+                    break;
+                case "--merges":
+                    generator.merges = Integer.parseInt(value);
+                    break;
+                case "--churn":
+                    generator.churn = Double.parseDouble(value);
+                    break;
+                case "--median-size":
+                    generator.medianSize = Integer.parseInt(value);
+                    break;
+                case "--size-spread":
+                    generator.sizeSpread = Double.parseDouble(value);
+                    break;
+                case "--max-size":
+                    generator.maxSize = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    generator.seed = Long.parseLong(value);
+                    break;
+                case "--durability":
+                    generator.durability = value;
+                    break;
+                case "--bulk":
+                    generator.bulk = true;
+                    break;
+                case "--gc":
+                    generator.gc = true;
+                    break;
+                default:
+                    if (name.startsWith("--") || directory != null) {
+                        System.out.println("Unknown option: " + arg);
+                        return;
+                    }
+                    directory = arg;
+            }
+        }
+        if (directory == null) {
+            System.out.println("Usage: java gitlet.RepositoryGenerator [OPTIONS] DIRECTORY");
+            return;
+        }
+        File root = new File(directory);
+        String[] existing = root.list();
+        if (existing != null && existing.length > 0) {
+            System.out.println(directory + " is not empty.");
+            return;
+        }
+        generator.generate(root);
+    }
+
+    /** Makes the repository in ROOT and prints the time of each phase */
+    private void generate(File directory) throws IOException {
+        long start = System.nanoTime();
+        root = directory.getAbsoluteFile();
+        root.mkdirs();
+        repository = new GitletRepository(root);
+        random = new Random(seed);
+        time("init", () -> {
+            repository.init();
+            if (durability != null) {
+                Utils.writeContents(repository.configFile, "core.durability = " + durability + "\n");
+            }
+            return null;
+        });
+
+        int owners = branches + 1;
+        names = new String[owners];
+        unmerged = new boolean[owners];
+        heads = new String[owners];
+        bases = new String[owners];
+        for (int owner = 0; owner < owners; owner += 1) {
+            names[owner] = owner == 0 ? "master" : "branch-" + owner;
+            directories.add(new ArrayList<>());
+            owned.add(new ArrayList<>());
+            changes.add(new TreeMap<>());
+        }
+        int directoryCount = Math.max(owners, (files + FILES_PER_DIRECTORY - 1) / FILES_PER_DIRECTORY);
+        for (int d = 0; d < directoryCount; d += 1) {
+            directories.get(d % owners).add("t" + d / FILES_PER_DIRECTORY + "/d" + d);
+        }
+        Map<String, Integer> imported = new TreeMap<>();
+        for (int i = 0; i < files; i += 1) {
+            int d = i / FILES_PER_DIRECTORY;
+            String path = "t" + d / FILES_PER_DIRECTORY + "/d" + d + "/f" + i + ".txt";
+            owned.get(d % owners).add(path);
+            versions.put(path, 0);
+            imported.put(path, 0);
+        }
+        nextFile = files;
+
+        if (bulk) {
+            repository.run(() -> {
+                history(imported);
+                flush();
+                return null;
+            });
+            time("refs", () -> {
+                repository.run(() -> {
+                    for (int owner = 0; owner < owners; owner += 1) {
+                        Refs.get().update(names[owner], heads[owner], "generate: bulk import");
+                    }
+                    return null;
+                });
+                return null;
+            });
+            time("checkout", () -> {
+                repository.reset(heads[0]);
+                return null;
+            });
+        } else {
+            history(imported);
+            ensureOn("master");
+        }
+        if (gc) {
+            time("gc", () -> {
+                repository.gc();
+                return null;
+            });
+        }
+        report(System.nanoTime() - start);
+    }
+
+    /** [HELPER METHOD] Commits IMPORTED, makes the branches, then the commits and merges */
+    private void history(Map<String, Integer> imported) {
+        apply(0, imported, "Import " + files + " files");
+        for (int owner = 1; owner < names.length; owner += 1) {
+            int branch = owner;
+            time("branch", () -> {
+                if (bulk) {
+                    heads[branch] = heads[0];
+                } else {
+                    repository.branch(names[branch]);
+                }
+                bases[branch] = heads[0];
+                return null;
+            });
+        }
+
+        int mergeInterval = merges > 0 ? Math.max(1, commits / (merges + 1)) : 0;
+        int count = Math.max(1, (int) Math.round(churn * files));
+        int made = 0;
+        while (made < commits) {
+            int owner = random.nextInt(names.length);
+            int run = 1 + random.nextInt(8);
+            for (int i = 0; i < run && made < commits; i += 1) {
+                apply(owner, changes(owner, count), "Change " + made + " on " + names[owner]);
+                made += 1;
+                if (mergeInterval > 0 && mergesMade < merges && made % mergeInterval == 0) {
+                    merge();
+                }
+            }
+        }
+    }
+
+    /** [HELPER METHOD] Returns COUNT random changes of the files of OWNER: the new version of
+     *  each file changed, or null for removed files */
+    private Map<String, Integer> changes(int owner, int count) {
+        List<String> paths = owned.get(owner);
+        List<String> ownDirectories = directories.get(owner);
+        Map<String, Integer> result = new TreeMap<>();
+        for (int i = 0; i < count; i += 1) {
+            int kind = random.nextInt(10);
+            if (kind == 0 || paths.isEmpty()) {
+                String directory = ownDirectories.get(random.nextInt(ownDirectories.size()));
+                String path = directory + "/f" + nextFile + ".txt";
+                nextFile += 1;
+                paths.add(path);
+                versions.put(path, 0);
+                result.put(path, 0);
+                continue;
+            }
+            int index = random.nextInt(paths.size());
+            String path = paths.get(index);
+            if (result.containsKey(path)) {
+                // Already changed by this commit
+                continue;
+            }
+            if (kind == 1 && paths.size() > 1) {
+                paths.set(index, paths.get(paths.size() - 1));
+                paths.remove(paths.size() - 1);
+                versions.remove(path);
+                result.put(path, null);
+            } else {
+                int version = versions.get(path) + 1;
+                versions.put(path, version);
+                result.put(path, version);
+            }
+        }
+        return result;
+    }
+
+    /** [HELPER METHOD] Commits CHANGES (see changes) to the branch of OWNER with MESSAGE */
+    private void apply(int owner, Map<String, Integer> changed, String message) {
+        if (owner > 0) {
+            unmerged[owner] = true;
+        }
+        if (!bulk) {
+            ensureOn(names[owner]);
+            for (Map.Entry<String, Integer> change : changed.entrySet()) {
+                String path = change.getKey();
+                if (change.getValue() == null) {
+                    time("rm", () -> {
+                        repository.rm(path);
+                        return null;
+                    });
+                } else {
+                    time("write", () -> {
+                        File file = new File(root, path);
+                        file.getParentFile().mkdirs();
+                        Utils.writeContents(file, contents(path, change.getValue()));
+                        return null;
+                    });
+                    time("add", () -> {
+                        repository.add(path);
+                        return null;
+                    });
+                }
+            }
+            heads[owner] = time("commit", () -> repository.commit(message));
+            return;
+        }
+
+        Map<String, String> additions = new TreeMap<>();
+        ArrayList<String> removals = new ArrayList<>();
+        for (Map.Entry<String, Integer> change : changed.entrySet()) {
+            String path = change.getKey();
+            if (change.getValue() == null) {
+                removals.add(path);
+            } else {
+                additions.put(path, time("blob", () -> {
+                    Blob blob = new Blob(contents(path, change.getValue()));
+                    blob.saveBlob();
+                    barrier();
+                    return blob.hash();
+                }));
+            }
+        }
+        String parent = heads[owner] != null ? heads[owner] : CommitTree.currentCommit();
+        heads[owner] = time("commit", () -> {
+            Commit commit = new Commit(message, parent, false);
+            commit.updateCommitFiles(additions, removals);
+            commit.store();
+            unrecorded.add(commit.hash());
+            barrier();
+            return commit.hash();
+        });
+        if (owner > 0) {
+            changes.get(owner).putAll(additions);
+            for (String path : removals) {
+                changes.get(owner).put(path, null);
+            }
+        }
+    }
+
+    /** [HELPER METHOD] Merges a branch with commits master hasn't merged into master, if any */
+    private void merge() {
+        List<Integer> candidates = new ArrayList<>();
+        for (int owner = 1; owner < names.length; owner += 1) {
+            if (unmerged[owner]) {
+                candidates.add(owner);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+        int owner = candidates.get(random.nextInt(candidates.size()));
+        String message = "Merged " + names[owner] + " into master.";
+        if (!bulk) {
+            ensureOn("master");
+            time("merge", () -> repository.merge(names[owner]));
+        } else if (heads[0].equals(bases[owner])) {
+            // Master has nothing since it last had the branch: fast-forward, as merge does
+            heads[0] = heads[owner];
+        } else {
+            Map<String, String> additions = new TreeMap<>();
+            ArrayList<String> removals = new ArrayList<>();
+            for (Map.Entry<String, String> change : changes.get(owner).entrySet()) {
+                if (change.getValue() == null) {
+                    removals.add(change.getKey());
+                } else {
+                    additions.put(change.getKey(), change.getValue());
+                }
+            }
+            heads[0] = time("merge", () -> {
+                Commit commit = new Commit(message, heads[0], heads[owner], true);
+                commit.updateCommitFiles(additions, removals);
+                commit.store();
+                unrecorded.add(commit.hash());
+                barrier();
+                return commit.hash();
+            });
+        }
+        changes.get(owner).clear();
+        bases[owner] = heads[owner];
+        unmerged[owner] = false;
+        mergesMade += 1;
+    }
+
+    /** [HELPER METHOD] Checks out BRANCH unless it is checked out */
+    private void ensureOn(String branch) {
+        if (!current.equals(branch)) {
+            time("checkout", () -> {
+                repository.checkoutBranch(branch);
+                return null;
+            });
+            current = branch;
+        }
+    }
+
+    /** [HELPER METHOD] Puts the objects of a bulk import in place every BARRIER_INTERVAL
+     *  objects, so they don't pile up in the temporary directories */
+    private void barrier() {
+        pendingObjects += 1;
+        if (pendingObjects >= BARRIER_INTERVAL) {
+            flush();
+        }
+    }
+
+    /** [HELPER METHOD] Puts the objects of a bulk import in place, then records the commits
+     *  among them in the commit graph and the message index, in the order they were made */
+    private void flush() {
+        Durability.barrier();
+        for (String id : unrecorded) {
+            Commit commit = Commit.returnCommit(id);
+            commit.record();
+            MessageIndex.add(id, commit.getMessage());
+        }
+        unrecorded.clear();
+        pendingObjects = 0;
+    }
+
+    /** [HELPER METHOD] Returns the contents of VERSION of the file PATH: a line naming them,
+     *  so no two versions are the same, then words up to a size drawn from the size
+     *  distribution, all chosen from the seed, PATH and VERSION */
+    private byte[] contents(String path, int version) {
+        Random words = new Random(seed * 31 + path.hashCode() * 1_000_003L + version);
+        byte[] header = (path + " " + version + "\n").getBytes(StandardCharsets.UTF_8);
+        long size = Math.round(medianSize * Math.exp(sizeSpread * words.nextGaussian()));
+        byte[] bytes = new byte[(int) Math.max(header.length, Math.min(maxSize, size))];
+        System.arraycopy(header, 0, bytes, 0, header.length);
+        int i = header.length;
+        while (i < bytes.length) {
+            String word = WORDS[words.nextInt(WORDS.length)];
+            for (int j = 0; j < word.length() && i < bytes.length; j += 1) {
+                bytes[i++] = (byte) word.charAt(j);
+            }
+            if (i < bytes.length) {
+                bytes[i++] = (byte) (words.nextInt(12) == 0 ? '\n' : ' ');
+            }
+        }
+        return bytes;
+    }
+
+    /** [HELPER METHOD] Returns the result of WORK, adding its time to PHASE */
+    private <T> T time(String phase, Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            long[] total = phases.computeIfAbsent(phase, k -> new long[2]);
+            total[0] += 1;
+            total[1] += System.nanoTime() - start;
+        }
+    }
+
+    /** [HELPER METHOD] Prints what was made in ELAPSED nanoseconds, and the time of each phase */
+    private void report(long elapsed) throws IOException {
+        int masterFiles = repository.run(() -> Commit.returnCommit(CommitTree.currentCommit()).getFiles().size());
+        long bytes;
+        try (Stream<Path> paths = Files.walk(repository.gitletDir.toPath())) {
+            bytes = paths.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+        System.out.printf("%d commits, %d merges, %d branches, %d files on master, %.1f MB in .gitlet, %.1f s%n",
+                commits, mergesMade, branches, masterFiles, bytes / 1e6, elapsed / 1e9);
+        System.out.printf("%10s %10s %12s %12s%n", "phase", "count", "total ms", "us per op");
+        for (Map.Entry<String, long[]> phase : phases.entrySet()) {
+            long[] total = phase.getValue();
+            System.out.printf("%10s %10d %12.1f %12.1f%n", phase.getKey(), total[0], total[1] / 1e6,
+                    total[1] / 1e3 / total[0]);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Measures how hashing the working tree for status scales with threads.
+ *
+ *  Usage: java gitlet.StatusBenchmark [FILES] [SIZE] [MAXTHREADS]
+ *  Writes FILES files of SIZE bytes in a scratch repository, then times hashing all of them
+ *  with an empty stat cache (every file is read) at 1, 2, 4, ... up to MAXTHREADS threads
+ *  (the number of processors by default), and once more with a warm stat cache.
+ *  @author procrastin
+ */
+public class StatusBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int size = args.length > 1 ? Integer.parseInt(args[1]) : 64 * 1024;
+        int maxThreads = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+        // Scratch repository; must be set up before Repository is first used
+        File dir = Files.createTempDirectory("gitlet-status").toFile();
+        System.setProperty("user.dir", dir.getPath());
+        Repository.init(Hashing.Algorithm.SHA1);
+
+        Random random = new Random(61);
+        byte[] contents = new byte[size];
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < files; i += 1) {
+            String path = "dir" + (i / 100) + "/file" + i;
+            random.nextBytes(contents);
+            WorkingTree.makeParents(path);
+            Utils.writeContents(WorkingTree.file(path), contents);
+            paths.add(path);
+        }
+        // Let the files age past the racy window, so the warm run can reuse hashes
+        Thread.sleep(2500);
+
+        System.out.printf("%d files of %d bytes%n", files, size);
+        Stage stage = null;
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            stage = new Stage();
+            long start = System.nanoTime();
+            stage.hashFiles(paths, threads);
+            System.out.printf("%3d threads, cold: %8.1f ms%n", threads, (System.nanoTime() - start) / 1e6);
+        }
+        long start = System.nanoTime();
+        stage.hashFiles(paths, maxThreads);
+        System.out.printf("%3d threads, warm: %8.1f ms%n", maxThreads, (System.nanoTime() - start) / 1e6);
+    }
+}
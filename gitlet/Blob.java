@@ -1,46 +1,276 @@
 package gitlet;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
 import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
-import static gitlet.Utils.join;
-
+/** Represents the contents of a tracked file.
+ *
+ *  A blob is stored either whole or as a Delta against another blob (usually the previous
+ *  version of the same file). Delta chains are at most MAX_DELTA_DEPTH long so rebuilding
+ *  a blob never applies more than that many deltas.
+ *      full:   FULL  <contents>
+ *      delta:  DELTA <depth> <base id length> <base id> <delta>
+ *  Blobs written by older versions are a serialized String and are still readable.
+ *
+ *  Contents are handled as raw bytes, so any file (not only UTF-8 text) round-trips. Files
+ *  larger than MAX_DELTA_SIZE are hashed, stored and checked out as streams through
+ *  fixed-size buffers and are never held in memory.
+ */
 public class Blob implements Serializable {
-    private String filename;
+    /** Fixed at the value Java computes for this class, so serialized blobs keep reading */
+    private static final long serialVersionUID = 1464202533252801667L;
+    /** Longest chain of deltas allowed before a blob is stored whole again */
+    static final int MAX_DELTA_DEPTH = 8;
+    /** Blobs smaller than this are always stored whole */
+    private static final int MIN_DELTA_SIZE = 256;
+    /** Blobs larger than this are always stored whole, and streamed */
+    static final int MAX_DELTA_SIZE = 4 * 1024 * 1024;
+    private static final byte FULL = 1;
+    private static final byte DELTA = 2;
+    /** First byte of a Java-serialized object (stream magic 0xACED) */
+    private static final byte SERIALIZED = (byte) 0xAC;
+
     private String id;
-    private String contents;
+    /** The contents, if they are held in memory */
+    private byte[] contents;
+    /** The working file holding the contents otherwise */
+    private transient File source;
 
-    public Blob(String filename, String contents) {
-        this.filename = filename;
+    /** Blobs are content-addressed: two files with the same contents share one blob,
+     *  whatever their names. */
+    public Blob(byte[] contents) {
         this.contents = contents;
-        String idtext = "blob" + filename + contents;
-        this.id = Utils.sha1(idtext);
+        this.id = Hashing.id("blob", contents);
+    }
+
+    /** Makes a blob of the contents of SOURCE, which is hashed without being read
+     *  into memory unless its hash is already known to be HASH */
+    private Blob(File source, String hash) {
+        this.source = source;
+        this.id = hash;
+        if (hash == null) {
+            this.id = Hashing.id("blob", source);
+        }
     }
 
+    /** Writes this blob to the blobs folder, unless an identical blob is already stored */
     public void saveBlob() {
-        File blobFile = join(Repository.BLOBS, id);
-        try {
-            blobFile.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
+        saveBlob(null);
+    }
+
+    /**
+     * Writes this blob to the blobs folder, unless an identical blob is already stored.
+     * If BASEID (the previous version of the file, may be null) is close enough, only the
+     * delta against it is written.
+     */
+    public void saveBlob(String baseID) {
+        if (Repository.blobStore().contains(id)) {
+            return;
+        }
+
+        // Large files are streamed to the store whole
+        if (contents == null && source.length() > MAX_DELTA_SIZE) {
+            try {
+                InputStream header = new ByteArrayInputStream(new byte[] {FULL});
+                Repository.blobStore().write(id, new SequenceInputStream(header, new FileInputStream(source)));
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return;
+        }
+
+        byte[] bytes = contents != null ? contents : Utils.readContents(source);
+        byte[] stored = null;
+        if (baseID != null && bytes.length >= MIN_DELTA_SIZE && bytes.length <= MAX_DELTA_SIZE
+                && Repository.blobStore().length(baseID) <= MAX_DELTA_SIZE) {
+            stored = encodeDelta(baseID, bytes);
+        }
+        if (stored == null) {
+            stored = new byte[bytes.length + 1];
+            stored[0] = FULL;
+            System.arraycopy(bytes, 0, stored, 1, bytes.length);
         }
-        Utils.writeObject(blobFile, contents);
+        Repository.blobStore().write(id, stored);
     }
 
+    /** Returns the blob of the working file FILENAME. Only its hash is computed up front */
     public static Blob returnBlob(String filename) {
-        File addedFile = Utils.join(Repository.CWD, filename);
-        String contents = Utils.readContentsAsString(addedFile);
-        return new Blob(filename, contents);
+        return returnBlob(filename, null);
+    }
+
+    /** Returns the blob of the working file FILENAME, whose hash is already known to be
+     *  HASH (or null if it isn't) */
+    public static Blob returnBlob(String filename, String hash) {
+        File addedFile = WorkingTree.file(filename);
+        if (!addedFile.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        return new Blob(addedFile, hash);
+    }
+
+    /** Returns the id of the blob of FILE, a working file, without reading it into memory */
+    static String hash(File file) {
+        return hash(file, Hashing.objectFormat());
+    }
+
+    /** Returns the id made with FORMAT of the blob of FILE, a working file, without reading it
+     *  into memory. Doesn't use the repository, so it may run on any thread. */
+    static String hash(File file, Hashing.Algorithm format) {
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("must be a normal file");
+        }
+        return Hashing.id(format, "blob", file);
     }
 
     /**
      * Returns blob content at a string given blob id
      * */
     public static String returnBlobContent(String blobID) {
-        File inFile = join(Repository.BLOBS, blobID);
-        String blobContents = Utils.readObject(inFile, String.class);
-        return blobContents;
+        return new String(returnBlobBytes(blobID), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the contents of the blob with the given id, from the cache of recently read
+     * blobs if it is there. The contents are shared, so callers must not modify them.
+     */
+    public static byte[] returnBlobBytes(String blobID) {
+        return GitletRepository.current().blobs.get(blobID, null, Blob::readBlobBytes);
+    }
+
+    /**
+     * [HELPER METHOD]
+     * Reads the contents of the blob with the given id, applying its chain of deltas
+     */
+    private static byte[] readBlobBytes(String blobID) {
+        // Walk down the chain until a blob stored whole
+        Deque<byte[]> deltas = new ArrayDeque<>();
+        byte[] stored = readStored(blobID);
+        while (stored[0] == DELTA) {
+            int idLength = stored[2];
+            deltas.push(stored);
+            stored = readStored(new String(stored, 3, idLength, StandardCharsets.US_ASCII));
+        }
+
+        byte[] contents;
+        if (stored[0] == SERIALIZED) {
+            contents = Utils.deserialize(stored, String.class).getBytes(StandardCharsets.UTF_8);
+        } else {
+            contents = new byte[stored.length - 1];
+            System.arraycopy(stored, 1, contents, 0, contents.length);
+        }
+
+        // Apply the deltas back up the chain
+        while (!deltas.isEmpty()) {
+            byte[] delta = deltas.pop();
+            int header = 3 + delta[2];
+            byte[] instructions = new byte[delta.length - header];
+            System.arraycopy(delta, header, instructions, 0, instructions.length);
+            contents = Delta.apply(contents, instructions);
+        }
+        return contents;
+    }
+
+    /**
+     * [HELPER METHOD]
+     * Returns the blob with the given id as stored, checking that it is in a known format
+     */
+    private static byte[] readStored(String blobID) {
+        byte[] stored = Repository.blobStore().read(blobID);
+        // Truncated or overwritten object [FAILURE CASE]
+        if (stored.length == 0 || (stored[0] != FULL && stored[0] != DELTA && stored[0] != SERIALIZED)
+                || (stored[0] == DELTA && (stored.length < 3 || stored.length < 3 + stored[2]))) {
+            throw new IllegalArgumentException("Corrupt object " + blobID);
+        }
+        return stored;
+    }
+
+    /**
+     * Writes the contents of the blob with the given id to FILE. Blobs stored whole are
+     * copied through a fixed-size buffer; others are small and rebuilt in memory. They are
+     * written to a temporary file beside FILE that is then renamed over it, so FILE is left
+     * as it was if the blob can't be read.
+     */
+    public static void writeBlobTo(String blobID, File file) {
+        File temp = Durability.tempFile(file);
+        try {
+            try (InputStream in = Repository.blobStore().open(blobID);
+                 OutputStream out = new FileOutputStream(temp)) {
+                if (in.read() != FULL) {
+                    out.write(returnBlobBytes(blobID));
+                } else {
+                    byte[] buffer = new byte[ObjectStore.BUFFER_SIZE];
+                    int n;
+                    while ((n = in.read(buffer)) > 0) {
+                        out.write(buffer, 0, n);
+                    }
+                }
+            }
+            Durability.replace(temp, file, false);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        } finally {
+            // Only still there if the blob couldn't be written
+            temp.delete();
+        }
+    }
+
+    /** Returns the id of the blob the blob with the given id is stored as a delta against,
+     *  or null if it is stored whole */
+    static String deltaBase(String blobID) {
+        byte[] stored = readStored(blobID);
+        if (stored[0] != DELTA) {
+            return null;
+        }
+        return new String(stored, 3, stored[2], StandardCharsets.US_ASCII);
+    }
+
+    /** Stores the blob with the given id whole, in place of a delta */
+    static void storeWhole(String blobID) {
+        byte[] bytes = returnBlobBytes(blobID);
+        byte[] stored = new byte[bytes.length + 1];
+        stored[0] = FULL;
+        System.arraycopy(bytes, 0, stored, 1, bytes.length);
+        Repository.blobStore().write(blobID, stored);
+    }
+
+    /**
+     * [HELPER METHOD]
+     * Returns BYTES stored as a delta against BASEID, or null if the chain below BASEID is
+     * already MAX_DELTA_DEPTH long or the delta doesn't save at least half of the space
+     */
+    private static byte[] encodeDelta(String baseID, byte[] bytes) {
+        byte[] base = Repository.blobStore().read(baseID);
+        int depth = base[0] == DELTA ? base[1] + 1 : 1;
+        if (depth > MAX_DELTA_DEPTH) {
+            return null;
+        }
+        byte[] baseContents = returnBlobBytes(baseID);
+        // Blobs of older versions aren't keyed by their contents, and migrate renames them
+        if (!Hashing.id("blob", baseContents).equals(baseID)) {
+            return null;
+        }
+        byte[] delta = Delta.create(baseContents, bytes);
+        if (delta.length > bytes.length / 2) {
+            return null;
+        }
+        byte[] baseName = baseID.getBytes(StandardCharsets.US_ASCII);
+        byte[] stored = new byte[3 + baseName.length + delta.length];
+        stored[0] = DELTA;
+        stored[1] = (byte) depth;
+        stored[2] = (byte) baseName.length;
+        System.arraycopy(baseName, 0, stored, 3, baseName.length);
+        System.arraycopy(delta, 0, stored, 3 + baseName.length, delta.length);
+        return stored;
     }
 
     /**
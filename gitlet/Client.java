@@ -0,0 +1,124 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/** Thin client for the gitlet daemon.
+ *
+ *  Usage: java gitlet.Client ARGS, with the same ARGS as gitlet.Main. If a daemon serves the
+ *  repository in the current directory, the command is sent to it and its output is copied
+ *  to this process's stdout and stderr; otherwise the command runs in this process. Either way
+ *  the output is the same. gitlet.Main does the same through send, but this class only uses
+ *  the JDK until it has to fall back, so talking to a daemon loads none of the rest of gitlet.
+ *
+ *  Protocol, over .gitlet/daemon.sock:
+ *      request:   <number of args: int> then per arg <length: int> <UTF-8 bytes>
+ *      response:  frames of <STDOUT or STDERR: byte> <length: int> <bytes>, ended by
+ *                 <EXIT: byte> <exit status: int>
+ *  @author procrastin
+ */
+public class Client {
+
+    /** Frame types of the response */
+    static final int STDOUT = 1;
+    static final int STDERR = 2;
+    static final int EXIT = 3;
+    /** Name of the socket in the .gitlet directory */
+    static final String SOCKET_NAME = "daemon.sock";
+    /** What send returns when no daemon serves the repository */
+    static final int NOT_SENT = -1;
+
+    public static void main(String[] args) {
+        File root = new File(System.getProperty("user.dir"));
+        int status = send(root, args);
+        if (status == NOT_SENT) {
+            Main.run(new GitletRepository(root), args);
+        } else if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /** Sends ARGS to the daemon serving the repository in ROOT, copies its output to this
+     *  process's stdout and stderr and returns the exit status of the command. Returns
+     *  NOT_SENT, having done nothing, if no daemon serves it. */
+    static int send(File root, String[] args) {
+        File socket = new File(new File(root, ".gitlet"), SOCKET_NAME);
+        if (!socket.exists()) {
+            return NOT_SENT;
+        }
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+        } catch (IOException excp) {
+            return NOT_SENT;
+        }
+        try {
+            channel.connect(UnixDomainSocketAddress.of(socket.toPath()));
+        } catch (IOException excp) {
+            // A socket left behind by a daemon that is gone
+            close(channel);
+            return NOT_SENT;
+        }
+
+        // Once the command is sent it must not run again here, whatever happens
+        try (SocketChannel open = channel) {
+            return forward(open, args);
+        } catch (IOException excp) {
+            System.err.println("Lost connection to the gitlet daemon: " + excp.getMessage());
+            return 1;
+        }
+    }
+
+    /** [HELPER METHOD] Closes CHANNEL, which failed to connect */
+    private static void close(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException excp) {
+            // Nothing was sent over it
+        }
+    }
+
+    /** [HELPER METHOD] Sends ARGS over CHANNEL, copies the output back and returns the exit
+     *  status of the command */
+    private static int forward(SocketChannel channel, String[] args) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)));
+        out.writeInt(args.length);
+        for (String arg : args) {
+            byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        out.flush();
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+        byte[] buffer = new byte[8192];
+        while (true) {
+            int type = in.readByte();
+            int length = in.readInt();
+            if (type == EXIT) {
+                System.out.flush();
+                System.err.flush();
+                return length;
+            }
+            PrintStream target = type == STDERR ? System.err : System.out;
+            while (length > 0) {
+                int n = in.read(buffer, 0, Math.min(length, buffer.length));
+                if (n < 0) {
+                    throw new IOException("unexpected end of output");
+                }
+                target.write(buffer, 0, n);
+                length -= n;
+            }
+        }
+    }
+}
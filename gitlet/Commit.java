@@ -2,16 +2,33 @@ package gitlet;
 
 
 import java.io.File;
-import java.io.IOException;
 import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
 /** Represents a gitlet commit object.
+ *
+ *  A commit is stored as a header ("GCMT", version, flags) followed by its fields:
+ *      <id> <parent> <second parent> <time> <date> <message> <tree>
+ *  ids (the parents may be missing) are a length byte and the raw bytes, the time is a long
+ *  of seconds since the epoch, and the date and message are an int length and UTF-8 bytes.
+ *  The flags say whether it is a merge commit. Files are not part of it: they are read from
+ *  the tree the first time they are asked for. Commits written by older versions are a
+ *  serialized Commit and are still read.
  *  @author procrastin
  */
 public class Commit implements Serializable {
 
+    /** Fixed so commits written before fields were added still deserialize */
+    private static final long serialVersionUID = 4222830637382901143L;
+    private static final int MAGIC = 0x47434d54; // "GCMT"
+    private static final int VERSION = 1;
+    private static final int MERGE = 1;
+
     /** The message of this Commit. */
     private String message;
     /** The date of this Commit. */
@@ -24,8 +41,17 @@ public class Commit implements Serializable {
     private String id;
     /** Is the commit a merge commit. */
     private boolean isMergeCommit;
-    /** The files tracked in this Commit. In the form <filename,blobID> */
-    public TreeMap<String, String> filesInCommit = new TreeMap<>();
+    /** Format of commit dates */
+    private static final String DATE_FORMAT = "EEE MMM d HH:mm:ss yyyy Z";
+    /** The id of the root Tree of the files tracked in this Commit. */
+    private String tree;
+    /** The files tracked in this Commit, in the form <filename,blobID>. Only set in commits
+     *  written before trees existed; other commits read their files from their tree. */
+    private TreeMap<String, String> filesInCommit;
+    /** The files tracked in this Commit, read from the tree on first use. */
+    private transient TreeMap<String, String> files;
+    /** The time of this Commit in seconds since the epoch, or 0 if it isn't known yet */
+    private transient long time;
 
     /** Makes initial commit (no arguments)*/
     public Commit() {
@@ -33,9 +59,9 @@ public class Commit implements Serializable {
         this.parent = null;
         this.timestamp = getCurrentDate();
         this.isMergeCommit = false;
-        this.filesInCommit = new TreeMap<>();
+        this.tree = Tree.write(new TreeMap<>());
         String idtext = "commit" + parent + message;
-        this.id = Utils.sha1(idtext);
+        this.id = Hashing.id(idtext);
     }
 
 
@@ -43,7 +69,7 @@ public class Commit implements Serializable {
     public Commit(String message, String parent, boolean isMergeCommit) {
         // Clone HEAD commit
         Commit currentCommit = Commit.returnCommit(parent);
-        this.filesInCommit = currentCommit.filesInCommit;
+        this.tree = currentCommit.treeID();
 
         // Update metadata
         this.message = message;
@@ -51,7 +77,7 @@ public class Commit implements Serializable {
         this.timestamp = getCurrentDate();
         this.isMergeCommit = isMergeCommit;
         String idtext = "commit" + parent + message + isMergeCommit;
-        this.id = Utils.sha1(idtext);
+        this.id = Hashing.id(idtext);
     }
 
     /** Makes a new merge commit object
@@ -59,7 +85,7 @@ public class Commit implements Serializable {
     public Commit(String message, String parent1, String parent2, boolean isMergeCommit) {
         // Clone HEAD commit
         Commit currentCommit = Commit.returnCommit(parent1);
-        this.filesInCommit = currentCommit.filesInCommit;
+        this.tree = currentCommit.treeID();
 
         // Update metadata
         this.message = message;
@@ -68,23 +94,119 @@ public class Commit implements Serializable {
         this.isMergeCommit = isMergeCommit;
         this.secondParent = parent2;
         String idtext = "commit" + parent1 + message + isMergeCommit;
-        this.id = Utils.sha1(idtext);
+        this.id = Hashing.id(idtext);
+
+    }
 
+    /** [HELPER METHOD] Makes a commit with nothing set, for decode */
+    private Commit(String id) {
+        this.id = id;
     }
 
     public void saveCommit() {
-        File commitFile = Utils.join(Repository.COMMITS, id);
+        store();
+        // The commit goes in place before the commit graph or the message index names it
+        Durability.barrier();
+        record();
+    }
+
+    /** Writes this commit, which may then wait for the next Durability.barrier to be put in
+     *  place. It is only recorded (see record) after that barrier. */
+    void store() {
+        Repository.commitStore().write(id, encode());
+    }
+
+    /** Records the place in the history of this commit, which must be in place, so readers of
+     *  the commit graph never meet a commit they can't read */
+    void record() {
+        CommitGraph.get().add(this);
+    }
+
+    /** Returns the commit COMMITID, from the cache of recently read commits while its stored
+     *  copy is unchanged. The commit is shared, so callers must not modify it. */
+    public static Commit returnCommit(String commitID) {
+        return GitletRepository.current().commits.get(commitID, Repository.commitStore().stamp(commitID),
+                id -> decode(Repository.commitStore().read(id)));
+    }
+
+    /** Returns this commit in the form it is stored in. Commits made before trees existed
+     *  have their tree written first. */
+    byte[] encode() {
+        byte[] dateBytes = timestamp.getBytes(StandardCharsets.UTF_8);
+        byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+        byte[][] ids = {fromID(id), fromID(parent), fromID(secondParent), fromID(treeID())};
+        int size = 9 + 8 + 8 + dateBytes.length + messageBytes.length;
+        for (byte[] bytes : ids) {
+            size += 1 + bytes.length;
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC).putInt(VERSION).put((byte) (isMergeCommit ? MERGE : 0));
+        putID(out, ids[0]);
+        putID(out, ids[1]);
+        putID(out, ids[2]);
+        out.putLong(getTime());
+        out.putInt(dateBytes.length).put(dateBytes);
+        out.putInt(messageBytes.length).put(messageBytes);
+        putID(out, ids[3]);
+        return out.array();
+    }
+
+    /** Returns the commit stored as STORED, in the current or the serialized format. Uses no
+     *  repository, so it may run on any thread. */
+    static Commit decode(byte[] stored) {
+        if (stored.length >= 2 && (stored[0] & 0xFF) == 0xAC && (stored[1] & 0xFF) == 0xED) {
+            return Utils.deserialize(stored, Commit.class);
+        }
         try {
-            commitFile.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
+            ByteBuffer in = ByteBuffer.wrap(stored);
+            if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                throw new IllegalArgumentException("not a commit");
+            }
+            int flags = in.get();
+            Commit commit = new Commit(getID(in));
+            commit.isMergeCommit = (flags & MERGE) != 0;
+            commit.parent = getID(in);
+            commit.secondParent = getID(in);
+            commit.time = in.getLong();
+            commit.timestamp = getString(in);
+            commit.message = getString(in);
+            commit.tree = getID(in);
+            return commit;
+        } catch (BufferUnderflowException excp) {
+            throw new IllegalArgumentException("truncated commit");
         }
-        Utils.writeObject(commitFile, this);
     }
 
-    public static Commit returnCommit(String filename) {
-        File commitFile = Utils.join(Repository.COMMITS, filename);
-        return Utils.readObject(commitFile, Commit.class);
+    /** [HELPER METHOD] Returns the raw bytes of the id ID, or none if it is null */
+    private static byte[] fromID(String id) {
+        return id == null ? new byte[0] : Utils.fromHex(id);
+    }
+
+    /** [HELPER METHOD] Writes the raw bytes of an id, after their length, to OUT */
+    private static void putID(ByteBuffer out, byte[] id) {
+        out.put((byte) id.length).put(id);
+    }
+
+    /** [HELPER METHOD] Reads an id written by putID from IN, or null if it is empty */
+    private static String getID(ByteBuffer in) {
+        int length = Byte.toUnsignedInt(in.get());
+        if (length == 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return Utils.toHex(bytes);
+    }
+
+    /** [HELPER METHOD] Reads a UTF-8 string, after its length, from IN */
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining()) {
+            throw new IllegalArgumentException("truncated commit");
+        }
+        String string = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return string;
     }
 
     /**
@@ -94,103 +216,125 @@ public class Commit implements Serializable {
      * @return
      */
     public boolean isCommitVersion(String filename, String blob) {
-        if (filesInCommit != null) {
-            if (filesInCommit.containsKey(filename)) {
-                if (filesInCommit.get(filename).equals(blob)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        String committedBlob = getFiles().get(filename);
+        return committedBlob != null && committedBlob.equals(blob);
     }
 
-    /** Iterates over addition stage files and adds/modifies/deletes from the current commit*/
+    /** Applies the addition and removal stages to the files of this commit. Only the trees
+     *  on the paths of the staged files are rewritten. */
     public void updateCommitFiles (Map<String, String> stagedForAddition, ArrayList<String> stagedForRemoval) {
-        // Iterating over addition stage
-        for (Map.Entry<String, String> entry : stagedForAddition.entrySet()) {
-            String key = entry.getKey();
-            String value = entry.getValue();
-
-            if (filesInCommit.containsKey(key)) {
-                filesInCommit.replace(key, value);
-            } else {
-                filesInCommit.put(key, value);
-            }
+        Map<String, String> changes = new TreeMap<>(stagedForAddition);
+        for (String file: stagedForRemoval) {
+            changes.put(file, null);
         }
+        this.tree = Tree.update(treeID(), changes);
+        this.files = null;
+    }
 
-        // Iterating over removal stage
-        for (String file: stagedForRemoval) {
-            if (filesInCommit.containsKey(file)) {
-                filesInCommit.remove(file);
-            }
+    /** Replaces the files tracked by this commit with FILES */
+    public void setFiles(Map<String, String> files) {
+        this.tree = Tree.write(files);
+        this.filesInCommit = null;
+        this.files = null;
+    }
+
+    /** Returns the id of the root tree of this commit, writing it first for commits
+     *  made before trees existed */
+    public String treeID() {
+        if (tree == null) {
+            tree = Tree.write(filesInCommit == null ? new TreeMap<>() : filesInCommit);
         }
+        return tree;
     }
 
     public void putFileInCWD(String filename) {
         // Commit doesn't have the requested file [FAILURE CASE]
-        if (!filesInCommit.containsKey(filename)) {
-            System.out.println("File does not exist in that commit.");
-            return;
+        if (!getFiles().containsKey(filename)) {
+            throw Utils.error("File does not exist in that commit.");
         }
 
-        // Retrieve blob of file
-        String fileContent = Blob.returnBlobContent(filesInCommit.get(filename));
-        List<String> cwdFiles = Utils.plainFilenamesIn(Repository.CWD);
-
-        // A version of the file exists in CWD -> delete it
-        if (cwdFiles.contains(filename)) {
-            Utils.restrictedDelete(filename);
-        }
-
-        // Create new file in CWD and write contents
-        File currentFile = Utils.join(Repository.CWD, filename);
+        // Write the contents over the file in CWD (creating the directories it goes in)
+        WorkingTree.makeParents(filename);
         try {
-            currentFile.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
+            Blob.writeBlobTo(getFiles().get(filename), WorkingTree.file(filename));
+        } catch (IllegalArgumentException excp) {
+            // Blob missing or unreadable: the working file is left as it was [FAILURE CASE]
+            throw Utils.error("Cannot check out %s: %s", filename, excp.getMessage());
         }
-        Utils.writeContents(currentFile, fileContent);
     }
 
     public String getParent() {
         return parent;
     }
 
+    public String getSecondParent() {
+        return secondParent;
+    }
+
+    /** Returns the files tracked in this commit, in the form <filename,blobID> */
     public TreeMap<String, String> getFiles() {
-        return filesInCommit;
+        if (files == null) {
+            files = tree != null ? Tree.files(tree) : filesInCommit;
+        }
+        return files;
     }
 
     public String getMessage() {
         return this.message;
     }
 
+    /** Returns the date of this commit, as log prints it */
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean isMergeCommit() {
+        return isMergeCommit;
+    }
+
     public static String getCurrentDate() {
         Date date = new Date();
-        SimpleDateFormat formatter = new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy Z", Locale.ENGLISH);
+        SimpleDateFormat formatter = new SimpleDateFormat(DATE_FORMAT, Locale.ENGLISH);
         String strDate = formatter.format(date);
         return strDate;
     }
 
+    /** Returns the time of this commit in seconds since the epoch */
+    public long getTime() {
+        if (time == 0) {
+            SimpleDateFormat formatter = new SimpleDateFormat(DATE_FORMAT, Locale.ENGLISH);
+            try {
+                time = formatter.parse(timestamp).getTime() / 1000;
+            } catch (ParseException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        }
+        return time;
+    }
+
     public String hash() {
         return this.id;
     }
 
-    /** This method returns the full ID given a shortened version */
-    public static String getFullID(String abbreviation) {
-        List<String> allCommits = Utils.plainFilenamesIn(Repository.COMMITS);
-        for (String commit : allCommits) {
-            if (commit.contains(abbreviation)) {
-                return commit;
-            }
+    /**
+     * Returns the id of the commit whose id starts with ABBREVIATION (which may be a full id).
+     * Throws a GitletException if there is no such commit, or more than one.
+     */
+    public static String resolveID(String abbreviation) {
+        List<String> matches = Repository.commitStore().idsStartingWith(abbreviation, 2);
+        // No commit has that prefix [FAILURE CASE]
+        if (matches.isEmpty()) {
+            throw Utils.error("No commit with that id exists.");
+        }
+        // Several commits have that prefix [FAILURE CASE]
+        if (matches.size() > 1) {
+            throw Utils.error("Commit id %s is ambiguous.", abbreviation);
         }
-        return null;
+        return matches.get(0);
     }
 
     @Override
     public String toString() {
-        if (isMergeCommit) {
-            return "=== \ncommit " + this.id + "\nMerge: " + this.parent.substring(0, 7) + " " + this.secondParent.substring(0, 7) + "\nDate: " + this.timestamp + "\n" + this.message + "\n";
-        }
-        return "=== \ncommit " + this.id + "\nDate: " + this.timestamp + "\n" + this.message + "\n";
+        return new LogEntry(this).toString();
     }
 }
@@ -0,0 +1,360 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/** The shape of the commit history, kept apart from the commits themselves.
+ *
+ *  .gitlet/commit-graph holds a header ("CGPH", version, id length) followed by one
+ *  fixed-width record per commit:
+ *      <id> <parent> <second parent> <generation> <commit time>
+ *  Parents are positions of other records (-1 if none), the generation is 1 for the initial
+ *  commit and 1 + the largest generation of the parents otherwise, and the time is in seconds
+ *  since the epoch. Records are appended as commits are made, so a parent always comes before
+ *  its children. The file is memory-mapped, so walking the history never deserializes a Commit.
+ *  A commit made again with other parents gets a new record; an id stands for its latest one.
+ *
+ *  Commits missing from the graph (e.g. in a repository made before it existed) are added the
+ *  first time they are looked up. The graph and its metadata are only written holding
+ *  <graph file>.lock (see Durability.locked), after mapping again what other processes added.
+ *  @author procrastin
+ */
+public class CommitGraph {
+
+    /** Position used for a missing parent */
+    public static final int NONE = -1;
+    private static final int MAGIC = 0x43475048; // "CGPH"
+    private static final int VERSION = 1;
+    private static final int HEADER = 12;
+    /** Number of latest records searched for an id before building the full id map */
+    private static final int RECENT_SCAN = 1024;
+
+    /** File holding the graph */
+    private final File file;
+    /** Lock file held while writing the graph or its metadata */
+    private final File lockFile;
+    /** Length of a binary commit id */
+    private int idLength = Utils.UID_LENGTH / 2;
+    /** Length of a record */
+    private int recordSize = idLength + 20;
+    /** The mapped file, or null if it is empty */
+    private ByteBuffer records;
+    /** Number of records */
+    private int count;
+    /** Position of each commit id, built on first use */
+    private Map<String, Integer> positions;
+    /** Stamp of the file when it was last mapped */
+    private Object stamp;
+    /** Date and message of the commits, opened on first use */
+    private CommitMetadata metadata;
+
+    /** Returns the commit graph of the current repository */
+    public static CommitGraph get() {
+        return GitletRepository.current().commitGraph();
+    }
+
+    /** Opens the graph stored in FILE, which need not exist yet */
+    public CommitGraph(File file) {
+        this.file = file;
+        this.lockFile = new File(file.getPath() + ".lock");
+        map();
+    }
+
+    /** Returns false if another process changed the file since it was mapped */
+    boolean isCurrent() {
+        return Objects.equals(Utils.fileStamp(file), stamp);
+    }
+
+    /** Returns the number of commits in the graph */
+    public int size() {
+        return count;
+    }
+
+    /** Returns the position of the commit with the given id, or NONE if there is no such commit */
+    public int position(String id) {
+        if (id == null) {
+            return NONE;
+        }
+        int recent = findRecent(id);
+        if (recent != NONE) {
+            return recent;
+        }
+        Integer position = positions().get(id);
+        if (position != null) {
+            return position;
+        }
+        if (!Repository.commitStore().contains(id)) {
+            return NONE;
+        }
+        return importCommits(id);
+    }
+
+    /** Returns the id of the commit at POSITION */
+    public String id(int position) {
+        byte[] id = new byte[idLength];
+        records.get(offset(position), id);
+        return Utils.toHex(id);
+    }
+
+    /** Returns the position of the first parent of the commit at POSITION, or NONE */
+    public int parent(int position) {
+        return records.getInt(offset(position) + idLength);
+    }
+
+    /** Returns the position of the second parent of the commit at POSITION, or NONE */
+    public int secondParent(int position) {
+        return records.getInt(offset(position) + idLength + 4);
+    }
+
+    /** Returns the generation number of the commit at POSITION */
+    public int generation(int position) {
+        return records.getInt(offset(position) + idLength + 8);
+    }
+
+    /** Returns the time (in seconds since the epoch) of the commit at POSITION */
+    public long time(int position) {
+        return records.getLong(offset(position) + idLength + 12);
+    }
+
+    /** Returns the id of the first parent of the commit with the given id, or null */
+    public String parentID(String id) {
+        int parent = parent(position(id));
+        return parent == NONE ? null : id(parent);
+    }
+
+    /** Adds COMMIT to the graph if it isn't there yet and returns its position. Its parents
+     *  must already be in the graph or in the commit store. A commit already there with the
+     *  same parents is given COMMIT's time and date, which are newer if it was made again. */
+    public int add(Commit commit) {
+        return Durability.locked(lockFile, () -> {
+            refresh();
+            int parent = position(commit.getParent());
+            int secondParent = position(commit.getSecondParent());
+            int position = findRecent(commit.hash());
+            if (position != NONE && parent(position) == parent && secondParent(position) == secondParent) {
+                if (time(position) != commit.getTime()) {
+                    setTime(position, commit.getTime());
+                    putMetadata(position, commit.getTimestamp(), commit.getMessage());
+                }
+                return position;
+            }
+            // A commit made again may have another second parent, which its id doesn't cover,
+            // or be too far back to be found here: it gets a new record, which lookups find
+            // before the old one
+            position = append(commit.hash(), parent, secondParent, commit.getTime());
+            putMetadata(position, commit.getTimestamp(), commit.getMessage());
+            return position;
+        });
+    }
+
+    /** Records DATE (as log prints it) and MESSAGE as the metadata of the commit at POSITION */
+    void putMetadata(int position, String date, String message) {
+        Durability.locked(lockFile, () -> {
+            metadata().put(position, id(position), date, message);
+            return null;
+        });
+    }
+
+    /** Returns the log entry of the commit at POSITION. Its date and message come from the
+     *  metadata kept beside the graph; a commit missing from it is read once and added. */
+    public LogEntry entry(int position) {
+        String id = id(position);
+        String[] metadata = metadata().get(position, id);
+        if (metadata == null) {
+            Commit commit = Commit.returnCommit(id);
+            metadata = new String[] {commit.getTimestamp(), commit.getMessage()};
+            putMetadata(position, metadata[0], metadata[1]);
+        }
+        int parent = parent(position);
+        int secondParent = secondParent(position);
+        return new LogEntry(id, parent == NONE ? null : id(parent),
+                secondParent == NONE ? null : id(secondParent), metadata[0], metadata[1],
+                secondParent != NONE);
+    }
+
+    /**
+     * Appends a record for the commit ID with the parents at positions PARENT and SECONDPARENT
+     * (or NONE) made at TIME, and returns its position
+     */
+    public int append(String id, int parent, int secondParent, long time) {
+        return Durability.locked(lockFile, () -> {
+            refresh();
+            int generation = 1;
+            if (parent != NONE) {
+                generation = Math.max(generation, generation(parent) + 1);
+            }
+            if (secondParent != NONE) {
+                generation = Math.max(generation, generation(secondParent) + 1);
+            }
+
+            if (count == 0) {
+                // The first commit sets the id length: 20 bytes for SHA-1, 32 for SHA-256
+                idLength = id.length() / 2;
+                recordSize = idLength + 20;
+                metadata = null;
+            }
+            ByteBuffer record = ByteBuffer.allocate(recordSize);
+            record.put(Utils.fromHex(id)).putInt(parent).putInt(secondParent).putInt(generation).putLong(time);
+            record.flip();
+            try (FileChannel channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                if (count == 0) {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER);
+                    header.putInt(MAGIC).putInt(VERSION).putInt(idLength).flip();
+                    channel.write(header, 0);
+                }
+                // Overwrites any partial record left by an interrupted write
+                channel.write(record, HEADER + (long) count * recordSize);
+                channel.truncate(HEADER + (long) (count + 1) * recordSize);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+
+            int position = count;
+            map();
+            if (positions != null) {
+                positions.put(id, position);
+            }
+            return position;
+        });
+    }
+
+    /** [HELPER METHOD] Maps the graph again if another process added records since; the id
+     *  map is dropped, as it lacks them */
+    private void refresh() {
+        if (!isCurrent()) {
+            map();
+            positions = null;
+        }
+    }
+
+    /** [HELPER METHOD] Sets the commit time of the record at POSITION to TIME */
+    private void setTime(int position, long time) {
+        ByteBuffer bytes = ByteBuffer.allocate(8);
+        bytes.putLong(time).flip();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+            channel.write(bytes, offset(position) + idLength + 12);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        map();
+    }
+
+    /**
+     * [HELPER METHOD]
+     * Adds the stored commit ID and any of its ancestors missing from the graph, parents
+     * first, and returns the position of ID
+     */
+    private int importCommits(String id) {
+        Map<String, Commit> loaded = new HashMap<>();
+        int position = NONE;
+        Deque<String> pending = new ArrayDeque<>();
+        pending.push(id);
+        while (!pending.isEmpty()) {
+            String next = pending.peek();
+            Commit commit = loaded.computeIfAbsent(next, Commit::returnCommit);
+            boolean ready = true;
+            for (String parent : new String[] {commit.getParent(), commit.getSecondParent()}) {
+                if (parent != null && findRecent(parent) == NONE && !positions().containsKey(parent)) {
+                    pending.push(parent);
+                    ready = false;
+                }
+            }
+            if (ready) {
+                pending.pop();
+                int added = add(commit);
+                if (next.equals(id)) {
+                    position = added;
+                }
+            }
+        }
+        return position;
+    }
+
+    /** [HELPER METHOD] Returns the metadata of the commits, opening it on first use */
+    private CommitMetadata metadata() {
+        if (metadata == null) {
+            metadata = new CommitMetadata(file, idLength);
+        }
+        return metadata;
+    }
+
+    /** [HELPER METHOD] Returns the map from commit id to position, building it on first use */
+    private Map<String, Integer> positions() {
+        if (positions == null) {
+            positions = new HashMap<>();
+            for (int i = 0; i < count; i += 1) {
+                positions.put(id(i), i);
+            }
+        }
+        return positions;
+    }
+
+    /**
+     * [HELPER METHOD]
+     * Returns the position of ID if it is one of the latest RECENT_SCAN commits (or the id map
+     * has been built already), NONE otherwise. Heads are almost always among the latest
+     * commits, so this usually spares building the map over the whole graph.
+     */
+    private int findRecent(String id) {
+        if (positions != null) {
+            Integer position = positions.get(id);
+            return position == null ? NONE : position;
+        }
+        byte[] key = Utils.fromHex(id);
+        for (int i = count - 1; key != null && i >= Math.max(0, count - RECENT_SCAN); i -= 1) {
+            if (hasID(i, key)) {
+                return i;
+            }
+        }
+        return NONE;
+    }
+
+    /** [HELPER METHOD] Returns true if the record at POSITION has the binary id KEY */
+    private boolean hasID(int position, byte[] key) {
+        if (key.length != idLength) {
+            return false;
+        }
+        int start = offset(position);
+        for (int i = 0; i < idLength; i += 1) {
+            if (records.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** [HELPER METHOD] Returns the offset of the record at POSITION */
+    private int offset(int position) {
+        return HEADER + position * recordSize;
+    }
+
+    /** [HELPER METHOD] Maps the graph file and reads its header */
+    private void map() {
+        stamp = Utils.fileStamp(file);
+        if (!file.isFile() || file.length() < HEADER) {
+            records = null;
+            count = 0;
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (records.getInt(0) != MAGIC || records.getInt(4) != VERSION) {
+            throw Utils.error("Corrupt commit graph");
+        }
+        idLength = records.getInt(8);
+        recordSize = idLength + 20;
+        count = (records.capacity() - HEADER) / recordSize;
+    }
+}
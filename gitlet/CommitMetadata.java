@@ -0,0 +1,163 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/** The date and message of each commit of a CommitGraph, kept apart from the commits so
+ *  log reads neither the commits' files nor Java serialization.
+ *
+ *  <graph file>-meta.idx holds a header ("CMET", version, id length) followed by one
+ *  fixed-width record per position of the graph:
+ *      <id> <offset>
+ *  where the offset (-1 if the metadata isn't recorded) is that of the commit's metadata in
+ *  <graph file>-meta, which is appended to:
+ *      <date length> <date> <message length> <message>
+ *  (UTF-8, lengths are ints). The id guards against a graph rebuilt since; metadata missing or
+ *  not matching is read from the commit instead. Both files are memory-mapped, and mapped again
+ *  when asked for a position past their end, so metadata appended by other processes is seen.
+ *  @author procrastin
+ */
+class CommitMetadata {
+
+    private static final int MAGIC = 0x434d4554; // "CMET"
+    private static final int VERSION = 1;
+    private static final int HEADER = 12;
+
+    /** File holding the offset of each position's metadata */
+    private final File indexFile;
+    /** File holding the metadata */
+    private final File dataFile;
+    /** Length of a binary commit id */
+    private final int idLength;
+    /** The mapped index, or null if not mapped yet */
+    private ByteBuffer index;
+    /** The mapped metadata, or null if not mapped yet */
+    private ByteBuffer data;
+
+    /** The metadata of the graph stored in GRAPHFILE, whose ids are IDLENGTH bytes long */
+    CommitMetadata(File graphFile, int idLength) {
+        this.indexFile = new File(graphFile.getPath() + "-meta.idx");
+        this.dataFile = new File(graphFile.getPath() + "-meta");
+        this.idLength = idLength;
+    }
+
+    /** Returns the date and message recorded for the commit ID at POSITION, or null if there
+     *  are none */
+    String[] get(int position, String id) {
+        long offset = offset(position, id);
+        if (offset < 0) {
+            map();
+            offset = offset(position, id);
+            if (offset < 0) {
+                return null;
+            }
+        }
+        if (data == null || offset + 8 > data.capacity()) {
+            map();
+        }
+        if (data == null || offset + 8 > data.capacity()) {
+            return null;
+        }
+        int start = (int) offset;
+        int dateLength = data.getInt(start);
+        if (dateLength < 0 || start + 8L + dateLength > data.capacity()) {
+            return null;
+        }
+        byte[] date = new byte[dateLength];
+        data.get(start + 4, date);
+        int messageLength = data.getInt(start + 4 + dateLength);
+        if (messageLength < 0 || start + 8L + dateLength + messageLength > data.capacity()) {
+            return null;
+        }
+        byte[] message = new byte[messageLength];
+        data.get(start + 8 + dateLength, message);
+        return new String[] {new String(date, StandardCharsets.UTF_8),
+            new String(message, StandardCharsets.UTF_8)};
+    }
+
+    /** Records DATE and MESSAGE as the metadata of the commit ID at POSITION */
+    void put(int position, String id, String date, String message) {
+        byte[] dateBytes = date.getBytes(StandardCharsets.UTF_8);
+        byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer entry = ByteBuffer.allocate(8 + dateBytes.length + messageBytes.length);
+        entry.putInt(dateBytes.length).put(dateBytes).putInt(messageBytes.length).put(messageBytes).flip();
+        int recordSize = idLength + 8;
+        try (FileChannel dataChannel = FileChannel.open(dataFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+             FileChannel indexChannel = FileChannel.open(indexFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long offset = dataChannel.size();
+            dataChannel.write(entry, offset);
+
+            long size = indexChannel.size();
+            if (size < HEADER) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER);
+                header.putInt(MAGIC).putInt(VERSION).putInt(idLength).flip();
+                indexChannel.write(header, 0);
+                size = HEADER;
+            }
+            // Positions skipped (e.g. by an interrupted write) are marked unknown
+            int count = (int) ((size - HEADER) / recordSize);
+            int skipped = Math.max(0, position - count);
+            ByteBuffer records = ByteBuffer.allocate((skipped + 1) * recordSize);
+            for (int i = 0; i < skipped; i += 1) {
+                records.put(new byte[idLength]).putLong(-1);
+            }
+            records.put(Utils.fromHex(id)).putLong(offset).flip();
+            indexChannel.write(records, HEADER + (long) Math.min(count, position) * recordSize);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        index = null;
+        data = null;
+    }
+
+    /** [HELPER METHOD] Returns the offset of the metadata of the commit ID at POSITION, or -1
+     *  if the mapped index doesn't have it */
+    private long offset(int position, String id) {
+        if (index == null) {
+            return -1;
+        }
+        int recordSize = idLength + 8;
+        int start = HEADER + position * recordSize;
+        if (start + recordSize > index.capacity()) {
+            return -1;
+        }
+        byte[] key = Utils.fromHex(id);
+        if (key == null || key.length != idLength) {
+            return -1;
+        }
+        for (int i = 0; i < idLength; i += 1) {
+            if (index.get(start + i) != key[i]) {
+                return -1;
+            }
+        }
+        return index.getLong(start + idLength);
+    }
+
+    /** [HELPER METHOD] Maps both files, if they exist */
+    private void map() {
+        index = map(indexFile);
+        data = map(dataFile);
+        if (index != null && (index.capacity() < HEADER || index.getInt(0) != MAGIC
+                || index.getInt(4) != VERSION || index.getInt(8) != idLength)) {
+            index = null;
+        }
+    }
+
+    /** [HELPER METHOD] Returns FILE mapped read-only, or null if it doesn't exist */
+    private static ByteBuffer map(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath())) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+}
@@ -2,48 +2,71 @@ package gitlet;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Consumer;
 
 public class CommitTree {
     /**
      * @return string id of current HEAD commit
      */
     public static String currentCommit() {
-        File branchFile = Utils.join(Repository.BRANCHES, currentBranch());
-        return Utils.readContentsAsString(branchFile);
+        Refs refs = Refs.get();
+        return refs.resolve(refs.head());
     }
 
     /** Returns the name of the current branch */
     public static String currentBranch() {
-        return Utils.readContentsAsString(Repository.HEAD);
+        return Refs.get().head();
     }
 
-    /** Updates the current branch file with the id of the current commit */
-    public static void updateCurrentHead(String commitID) {
-        String currentBranch = Utils.readContentsAsString(Repository.HEAD);
-        File branchFile = Utils.join(Repository.BRANCHES, currentBranch);
-        Utils.writeContents(branchFile, commitID);
+    /** Points the current branch at the commit COMMITID, because of COMMAND */
+    public static void updateCurrentHead(String commitID, String command) {
+        Refs refs = Refs.get();
+        refs.update(refs.head(), commitID, command);
     }
 
     /** Returns the ID of the commit at the head of the other branch */
     public static String otherCommit (String branchName) {
-         File otherBranchHeadID = Utils.join(Repository.BRANCHES, branchName);
-         return Utils.readContentsAsString(otherBranchHeadID);
+         return Refs.get().resolve(branchName);
     }
 
-    public static void log(String commitID) {
-        if (commitID == null) {
-            return;
+    /** Returns the entries of the commit COMMITID and of its first parents, latest first */
+    public static List<LogEntry> log(String commitID) {
+        List<LogEntry> entries = new ArrayList<>();
+        log(commitID, Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, entries::add);
+        return entries;
+    }
+
+    /**
+     * Passes ACTION the entries of the commit COMMITID and of its first parents, latest first,
+     * skipping commits made after UNTIL and stopping at the first commit made before SINCE
+     * (both in seconds since the epoch) or once MAXCOUNT entries were passed.
+     * The walk follows parent positions in the commit graph and takes dates and messages from
+     * the metadata kept beside it, so it reads no commit and costs the same for the latest
+     * MAXCOUNT commits however long the history is.
+     */
+    public static void log(String commitID, int maxCount, long since, long until, Consumer<LogEntry> action) {
+        CommitGraph graph = CommitGraph.get();
+        int count = 0;
+        int position = graph.position(commitID);
+        while (position != CommitGraph.NONE && count < maxCount) {
+            long time = graph.time(position);
+            if (time < since) {
+                break;
+            }
+            if (time <= until) {
+                action.accept(graph.entry(position));
+                count += 1;
+            }
+            position = graph.parent(position);
         }
-        Commit currentCommit = Commit.returnCommit(commitID);
-        System.out.println(currentCommit.toString());
-        log(currentCommit.getParent());
     }
 
-    public static void commit(Stage index, String message, boolean isMergeCommit, String otherBranch) {
+    /** Commits the staging area INDEX with MESSAGE (merging in OTHERBRANCH if ISMERGECOMMIT)
+     *  and returns the id of the new commit */
+    public static String commit(Stage index, String message, boolean isMergeCommit, String otherBranch) {
         // No staged files [FAILURE CASE]
         if (index.additionStage.isEmpty() && index.removalStage.isEmpty()) {
-            System.out.println("No changes added to the commit.");
-            return;
+            throw Utils.error("No changes added to the commit.");
         }
 
         Commit newCommit = null;
@@ -58,15 +81,14 @@ public class CommitTree {
 
         newCommit.updateCommitFiles(index.additionStage, index.removalStage); // Updating tracked files for new commit
         newCommit.saveCommit();
+        MessageIndex.add(newCommit.hash(), message);
 
         // Clear staging area
         index.clearStagingArea();
 
         // Update current pointer
-        String currentBranch = Utils.readContentsAsString(Repository.HEAD);
-        File branchFile = Utils.join(Repository.BRANCHES, currentBranch);
-        Utils.writeContents(branchFile,newCommit.hash());
-
+        updateCurrentHead(newCommit.hash(), (isMergeCommit ? "commit (merge): " : "commit: ") + message);
+        return newCommit.hash();
     }
 
     /** Performs checkout function */
@@ -79,39 +101,26 @@ public class CommitTree {
 
     /** Performs checkout function */
     public static void checkoutCommitFile(String commitID, String filename) {
-        // ID is shorter than 40 chars -> get full version
-        if (commitID.length() < 40) {
-            commitID = Commit.getFullID(commitID);
-        }
-        // Commit exists
-        List<String> commits = Utils.plainFilenamesIn(Repository.COMMITS);
-        if (commits.contains(commitID)) {
-            Commit checkoutCommit = Commit.returnCommit(commitID);
-            checkoutCommit.putFileInCWD(filename);
-        } else {
-            System.out.println("No commit with that id exists.");
-        }
+        // ID may be abbreviated -> get full version
+        Commit checkoutCommit = Commit.returnCommit(Commit.resolveID(commitID));
+        checkoutCommit.putFileInCWD(filename);
     }
 
     /** Performs merge function */
-    public static void merge (String branch, Stage index) {
+    public static MergeResult merge (String branch, Stage index) {
         // Uncommitted additions/removals [FAILURE CASE]
         if (!(index.additionStage.isEmpty()) || !(index.removalStage.isEmpty())) {
-            System.out.println("You have uncommitted changes.");
-            return;
+            throw Utils.error("You have uncommitted changes.");
         }
 
         // Branch doesn't exist [FAILURE CASE]
-        List<String> branches = Utils.plainFilenamesIn(Repository.BRANCHES);
-        if (!(branches.contains(branch))) {
-            System.out.println("A branch with that name does not exist.");
-            return;
+        if (!Refs.get().exists(branch)) {
+            throw Utils.error("A branch with that name does not exist.");
         }
 
         // Given branch is current branch [FAILURE CASE]
         if (branch.equals(currentBranch())) {
-            System.out.println("Cannot merge a branch with itself.");
-            return;
+            throw Utils.error("Cannot merge a branch with itself.");
         }
 
         // Getting the files for the split, current branch, and given branch head commits
@@ -129,24 +138,20 @@ public class CommitTree {
         for (String file: currentUntrackedFiles) {
             // && !(otherFiles.containsKey(file))
             if (!(currentUntrackedFiles.isEmpty())) {
-                System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                index.untrackedFiles.clear();
-                return;
+                throw Utils.error("There is an untracked file in the way; delete it, or add and commit it first.");
             }
         }
 
 
         // Split point is the same commit as given branch [FAILURE CASE]
         if (splitPoint.hash().equals(otherHeadCommit.hash())) {
-            System.out.println("Given branch is an ancestor of the current branch.");
-            return;
+            return new MergeResult(MergeResult.Outcome.ALREADY_MERGED, false, null);
         }
 
         // Split point is the same commit as current branch [FAILURE CASE]
         if (splitPoint.hash().equals(currentHeadCommit.hash())) {
             Repository.checkoutBranch(branch, index);
-            System.out.println("Current branch fast-forwarded.");
-            return;
+            return new MergeResult(MergeResult.Outcome.FAST_FORWARDED, false, null);
         }
 
         /** MERGE CASES ~~~~~~ CURRENT -> master, GIVEN -> other
@@ -178,7 +183,7 @@ public class CommitTree {
          *
          *  AFTER ALL NECESSARY CHANGES HAVE BEEN MADE, DO A MERGE COMMIT
          *      -> print "Merged [] into []."
-         *      -> if there was a merge conflict, print "Encountered.."
+         *      -> if there was a merge conflict, report it (the CLI prints "Encountered..")
          *
          */
 
@@ -205,11 +210,11 @@ public class CommitTree {
              */
 
             if (splitPointFiles.containsKey(key)) {
-                if (splitPointFiles.containsValue(value)) {
+                if (value.equals(splitPointFiles.get(key))) {
 
                     //IMPLEMENT CASE 1 AND 6
                     if (otherFiles.containsKey(key)) {
-                        if (!(otherFiles.containsValue(value))) {
+                        if (!(value.equals(otherFiles.get(key)))) {
                             noConflictmergeCase(branch, index, key, 1);
                             //System.out.println("merge case 1");
                         }
@@ -219,7 +224,7 @@ public class CommitTree {
                     }
                 } else {
                     if (otherFiles.containsKey(key)) {
-                        if (!(otherFiles.containsValue(value)) && !(otherFiles.get(key).equals(splitPointFiles.get(key)))) {
+                        if (!(value.equals(otherFiles.get(key))) && !(otherFiles.get(key).equals(splitPointFiles.get(key)))) {
                             createConflictFile(index, branch, key, 3); // CONFLICT case III
                             conflictHappened = true;
                             //System.out.println("merge case 8 [CONFLICT 3]");
@@ -232,7 +237,7 @@ public class CommitTree {
                 }
             } else {
                 if (otherFiles.containsKey(key)) {
-                    if (!(otherFiles.containsValue(value))) {
+                    if (!(value.equals(otherFiles.get(key)))) {
                         createConflictFile(index, branch, key, 1); // CONFLICT case I and II
                         conflictHappened = true;
                         //System.out.println("merge case 8 [CONFLICT 1]");
@@ -249,7 +254,7 @@ public class CommitTree {
 
 
             if (splitPointFiles.containsKey(key)) {
-                if (!splitPointFiles.containsValue(value)) {
+                if (!value.equals(splitPointFiles.get(key))) {
                     if (!currentFiles.containsKey(key)) {
                         createConflictFile(index, branch, key,5); // CONFLICT case 5
                         conflictHappened = true;
@@ -265,11 +270,8 @@ public class CommitTree {
 
         }
 
-        if (conflictHappened) {
-            System.out.println("Encountered a merge conflict.");
-        }
-
-        commit(index, "Merged " + branch + " into " + currentBranch() + ".", true, branch);
+        String mergeCommit = commit(index, "Merged " + branch + " into " + currentBranch() + ".", true, branch);
+        return new MergeResult(MergeResult.Outcome.MERGED, conflictHappened, mergeCommit);
     }
 
     public static void noConflictmergeCase (String other, Stage index, String filename, int mergeCase) {
@@ -286,7 +288,8 @@ public class CommitTree {
 
     public static void createConflictFile(Stage index, String other, String filename, int conflictCase) {
         // Create new conflict file
-        File CONFLICT_FILE = Utils.join(Repository.CWD, filename);
+        WorkingTree.makeParents(filename);
+        File CONFLICT_FILE = WorkingTree.file(filename);
         try {
             CONFLICT_FILE.createNewFile();
         } catch (IOException e) {
@@ -329,36 +332,11 @@ public class CommitTree {
 
     /**
      * [HELPER METHOD]
-     * Returns ID of the split point.
+     * Returns ID of the split point: the latest common ancestor of both heads, following
+     * both parents of merge commits (see MergeBase).
      */
     public static String findSplit(Commit currentBranchHead, Commit otherBranchHead) {
-        Commit currentPointer = currentBranchHead;
-        List<String> commitHistory = new ArrayList<>();
-        // Add latest commit
-        commitHistory.add(currentPointer.hash());
-
-        // Add the current branch's history into a commit
-        while(currentPointer.getParent() != null) {
-            commitHistory.add(currentPointer.getParent());
-            currentPointer = Commit.returnCommit(currentPointer.getParent());
-        }
-
-        // Add very first commit
-        commitHistory.add(currentPointer.hash());
-
-        Commit splitCommit = closestCommonAncestor(commitHistory, otherBranchHead);
-        return splitCommit.hash();
+        return MergeBase.find(currentBranchHead.hash(), otherBranchHead.hash());
     }
 
-    /**
-     * [HELPER METHOD]
-     * Recursive helper function that goes through branch's commit parent to find the latest common ancestor */
-    public static Commit closestCommonAncestor (List<String> history, Commit current) {
-        if (history.contains(current.hash())) {
-            return current;
-        }
-        return Commit.returnCommit(current.getParent());
-    }
-
-
 }
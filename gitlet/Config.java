@@ -0,0 +1,52 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Properties;
+
+/** Settings of the current repository.
+ *
+ *  Settings are read from .gitlet/config, one "<key> = <value>" per line; lines starting with
+ *  '#' are comments. The file is optional, and a missing or malformed setting takes its default.
+ *  Known settings:
+ *      status.parallelism  number of threads hashing working files in status
+ *                          (default: number of processors)
+ *      log.parallelism     number of threads reading commits in global-log
+ *                          (default: number of processors)
+ *      core.durability     none, batched or strict: what is synced to the disk before a
+ *                          command returns (default: batched, see Durability)
+ *      core.objectFormat   sha1 or sha256: how object ids are made, set by init (default: sha1,
+ *                          see Hashing). Changing it in an existing repository breaks it
+ *  @author procrastin
+ */
+public class Config {
+
+    /** Returns the setting KEY, or DEFAULT if it isn't set */
+    public static String get(String key, String defaultValue) {
+        return GitletRepository.current().settings().getProperty(key, defaultValue);
+    }
+
+    /** Returns the setting KEY as an int, or DEFAULT if it isn't set or isn't a number */
+    public static int getInt(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(get(key, "").trim());
+        } catch (NumberFormatException excp) {
+            return defaultValue;
+        }
+    }
+
+    /** Returns the settings stored in FILE, which need not exist */
+    static Properties read(File file) {
+        Properties settings = new Properties();
+        if (file.isFile()) {
+            try (Reader in = new FileReader(file)) {
+                settings.load(in);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return settings;
+    }
+}
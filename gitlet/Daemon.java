@@ -0,0 +1,189 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/** A long-lived gitlet process serving one repository.
+ *
+ *  "gitlet daemon" listens on .gitlet/daemon.sock until "gitlet daemon stop" is sent to it
+ *  (see Client for the protocol); "gitlet daemon start" runs it in the background. While it
+ *  runs, gitlet.Main and gitlet.Client send it their commands. Commands run one at a time through Main.run, with stdout and
+ *  stderr sent back to the client, so their output is the same as when run in their own
+ *  process. Between commands the process keeps its loaded classes, the index (while INDEX is
+ *  unchanged), recently read commits (while their stored copy is unchanged) and blobs, the
+ *  commit graph and the pack indexes (while their files are unchanged), so other processes
+ *  may still change the repository while the daemon runs.
+ *  @author procrastin
+ */
+public class Daemon {
+
+    /** Longest time, in milliseconds, daemon start waits for the daemon to listen */
+    private static final long START_TIMEOUT = 30000;
+
+    /** Runs a daemon serving REPOSITORY in a new process and returns once it listens */
+    public static void start(GitletRepository repository) {
+        File socket = Utils.join(repository.gitletDir, Client.SOCKET_NAME);
+        String java = Utils.join(new File(System.getProperty("java.home")), "bin", "java").getPath();
+        Process process;
+        try {
+            process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                    Main.class.getName(), "daemon")
+                    .directory(repository.root)
+                    .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                    .redirectError(ProcessBuilder.Redirect.DISCARD)
+                    .start();
+            // It reads nothing, and must not hold this command's output open
+            process.getOutputStream().close();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        long deadline = System.currentTimeMillis() + START_TIMEOUT;
+        while (!listening(socket)) {
+            if (!process.isAlive() || System.currentTimeMillis() > deadline) {
+                throw Utils.error("The daemon did not start.");
+            }
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw Utils.error("The daemon did not start.");
+            }
+        }
+    }
+
+    /** [HELPER METHOD] Returns whether a daemon listens on SOCKET */
+    private static boolean listening(File socket) {
+        if (!socket.exists()) {
+            return false;
+        }
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socket.toPath())).close();
+            return true;
+        } catch (IOException excp) {
+            return false;
+        }
+    }
+
+    /** Serves commands on REPOSITORY until told to stop */
+    public static void serve(GitletRepository repository) {
+        File socket = Utils.join(repository.gitletDir, Client.SOCKET_NAME);
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socket.toPath());
+        if (socket.exists()) {
+            try {
+                SocketChannel.open(address).close();
+                System.out.println("A daemon is already running.");
+                return;
+            } catch (IOException excp) {
+                // Left behind by a daemon that is gone
+                socket.delete();
+            }
+        }
+
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(address);
+            // Stopping deletes the socket, through which nothing could reach the daemon then.
+            // A socket left by a daemon that died is found stale by the next one and clients.
+            while (socket.exists()) {
+                try (SocketChannel client = server.accept()) {
+                    handle(repository, client, socket);
+                } catch (IOException excp) {
+                    // The client went away; carry on with the next one
+                }
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** [HELPER METHOD] Runs the command sent by CLIENT on REPOSITORY. If told to stop, deletes
+     *  SOCKET before the client hears back, so its next command runs in its own process. */
+    private static void handle(GitletRepository repository, SocketChannel client, File socket)
+            throws IOException {
+        DataInputStream in = new DataInputStream(Channels.newInputStream(client));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i += 1) {
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            args[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(client), ObjectStore.BUFFER_SIZE));
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        PrintStream clientOut = frames(out, Client.STDOUT);
+        PrintStream clientErr = frames(out, Client.STDERR);
+        boolean serving = true;
+        int status = 0;
+        System.setOut(clientOut);
+        System.setErr(clientErr);
+        try {
+            if (args.length >= 1 && args[0].equals("daemon")) {
+                serving = daemonCommand(args);
+            } else {
+                Main.run(repository, args);
+            }
+        } catch (Throwable excp) {
+            // As an uncaught exception would in its own process
+            excp.printStackTrace();
+            status = 1;
+        } finally {
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        clientOut.flush();
+        clientErr.flush();
+        if (!serving) {
+            socket.delete();
+        }
+        out.writeByte(Client.EXIT);
+        out.writeInt(status);
+        out.flush();
+    }
+
+    /** [HELPER METHOD] Runs the daemon command ARGS sent to a running daemon, and returns
+     *  false if it was told to stop */
+    private static boolean daemonCommand(String[] args) {
+        if (args.length == 2 && args[1].equals("stop")) {
+            return false;
+        }
+        if (args.length == 1 || args.length == 2 && args[1].equals("start")) {
+            System.out.println("A daemon is already running.");
+        } else {
+            System.out.println("Incorrect operands.");
+        }
+        return true;
+    }
+
+    /** [HELPER METHOD] Returns a stream sending what is printed to it to OUT, in frames of
+     *  type TYPE. Text is encoded as System.out would encode it. */
+    private static PrintStream frames(DataOutputStream out, int type) {
+        OutputStream framed = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[] {(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                out.writeByte(type);
+                out.writeInt(length);
+                out.write(bytes, offset, length);
+            }
+        };
+        return new PrintStream(new BufferedOutputStream(framed, ObjectStore.BUFFER_SIZE), false,
+                Charset.defaultCharset());
+    }
+}
@@ -0,0 +1,127 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/** Binary deltas between two versions of a file.
+ *
+ *  A delta is the length of the result followed by a list of instructions:
+ *      COPY   <offset> <length>   copy LENGTH bytes of the base starting at OFFSET
+ *      INSERT <length> <bytes>    append the given literal bytes
+ *  Matches are found by indexing the base in BLOCK-sized chunks and extending every
+ *  chunk the target shares with it, so a version that only changes a few lines is
+ *  stored as a handful of COPY instructions around the changed bytes.
+ *  @author procrastin
+ */
+public class Delta {
+
+    /** Size of the chunks of the base that are indexed for matching */
+    private static final int BLOCK = 16;
+    private static final byte COPY = 0;
+    private static final byte INSERT = 1;
+
+    /** Returns a delta that rebuilds TARGET from BASE */
+    public static byte[] create(byte[] base, byte[] target) {
+        // Index every block of the base by its contents
+        Map<Integer, Integer> blocks = new HashMap<>();
+        for (int i = 0; i + BLOCK <= base.length; i += BLOCK) {
+            blocks.putIfAbsent(hashBlock(base, i), i);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeInt(out, target.length);
+        int pending = 0; // start of the bytes not yet covered by an instruction
+        int i = 0;
+        while (i + BLOCK <= target.length) {
+            Integer candidate = blocks.get(hashBlock(target, i));
+            if (candidate == null || !sameBlock(base, candidate, target, i)) {
+                i += 1;
+                continue;
+            }
+
+            // Extend the match backwards over the pending literal bytes and forwards
+            int baseStart = candidate;
+            int targetStart = i;
+            while (baseStart > 0 && targetStart > pending
+                    && base[baseStart - 1] == target[targetStart - 1]) {
+                baseStart -= 1;
+                targetStart -= 1;
+            }
+            int length = i + BLOCK - targetStart;
+            while (baseStart + length < base.length && targetStart + length < target.length
+                    && base[baseStart + length] == target[targetStart + length]) {
+                length += 1;
+            }
+
+            writeInsert(out, target, pending, targetStart);
+            out.write(COPY);
+            writeInt(out, baseStart);
+            writeInt(out, length);
+            i = targetStart + length;
+            pending = i;
+        }
+        writeInsert(out, target, pending, target.length);
+        return out.toByteArray();
+    }
+
+    /** Returns the result of applying DELTA, created by create(), to BASE */
+    public static byte[] apply(byte[] base, byte[] delta) {
+        ByteBuffer in = ByteBuffer.wrap(delta);
+        byte[] result = new byte[in.getInt()];
+        int position = 0;
+        while (in.hasRemaining()) {
+            byte op = in.get();
+            if (op == COPY) {
+                int offset = in.getInt();
+                int length = in.getInt();
+                System.arraycopy(base, offset, result, position, length);
+                position += length;
+            } else if (op == INSERT) {
+                int length = in.getInt();
+                in.get(result, position, length);
+                position += length;
+            } else {
+                throw Utils.error("Corrupt delta");
+            }
+        }
+        return result;
+    }
+
+    /** [HELPER METHOD] Appends an INSERT of TARGET[FROM..TO) if it isn't empty */
+    private static void writeInsert(ByteArrayOutputStream out, byte[] target, int from, int to) {
+        if (to > from) {
+            out.write(INSERT);
+            writeInt(out, to - from);
+            out.write(target, from, to - from);
+        }
+    }
+
+    /** [HELPER METHOD] Appends VALUE as 4 big-endian bytes */
+    private static void writeInt(ByteArrayOutputStream out, int value) {
+        out.write(value >>> 24);
+        out.write(value >>> 16);
+        out.write(value >>> 8);
+        out.write(value);
+    }
+
+    /** [HELPER METHOD] Hash of the BLOCK bytes of DATA starting at START */
+    private static int hashBlock(byte[] data, int start) {
+        int hash = 1;
+        for (int i = start; i < start + BLOCK; i += 1) {
+            hash = 31 * hash + data[i];
+        }
+        return hash;
+    }
+
+    /** [HELPER METHOD] Returns true if the blocks of A at I and B at J hold the same bytes */
+    private static boolean sameBlock(byte[] a, int i, byte[] b, int j) {
+        for (int k = 0; k < BLOCK; k += 1) {
+            if (a[i + k] != b[j + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
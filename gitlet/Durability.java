@@ -0,0 +1,132 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/** How files of the repository reach the disk.
+ *
+ *  Objects, packs, INDEX and the refs snapshot (.gitlet/refs) are never overwritten in place:
+ *  they are written to a temporary file (see tempFile) that is then renamed over the old one,
+ *  so a crash leaves either the old or the new version, never a truncated one. Ref changes
+ *  are appended to the refs journal (.gitlet/refs.log) instead, whose partly written last
+ *  change is ignored on reading (see Refs). Whether they also survive a power loss depends on
+ *  the core.durability setting:
+ *      none     nothing is synced; the OS writes files back when it likes
+ *      batched  (default) objects are written to temporary files and only renamed into place,
+ *               all at once, by barrier: before a ref change is appended, before INDEX is
+ *               written, before a commit is recorded in the commit graph and at the end of
+ *               each command, after syncing them together. The journal or INDEX is then
+ *               synced too, so it never names an object that could be lost, and bulk writes
+ *               pay one barrier instead of one sync per object
+ *      strict   every object, journal change, snapshot and INDEX is synced, with its
+ *               directory, as it is written
+ *  Refs.update and Stage.write call barrier themselves, so callers need not. Files appended
+ *  to in place (the refs journal, the commit graph and its metadata) are only written holding
+ *  a lock file (see locked), so a daemon and commands run beside it take turns.
+ *  @author procrastin
+ */
+public class Durability {
+
+    /** The durability levels */
+    enum Level { NONE, BATCHED, STRICT }
+
+    /** Lock of each lock file within this process: a FileLock only keeps other processes out */
+    private static final Map<String, ReentrantLock> LOCKS = new ConcurrentHashMap<>();
+
+    /** Returns the durability level of the current repository */
+    static Level level() {
+        try {
+            return Level.valueOf(Config.get("core.durability", "batched").trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException excp) {
+            return Level.BATCHED;
+        }
+    }
+
+    /** Writes CONTENTS to the ref (or other small file) FILE, once every object written so
+     *  far is in place */
+    static void writeRef(File file, String contents) {
+        barrier();
+        File temp = tempFile(file);
+        try {
+            Files.write(temp.toPath(), contents.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        replace(temp, file, level() != Level.NONE);
+    }
+
+    /** Moves every object written so far, but not yet put in place, into place. Writers of
+     *  files naming objects call this first. */
+    static void barrier() {
+        Repository.commitStore().flush();
+        Repository.treeStore().flush();
+        Repository.blobStore().flush();
+    }
+
+    /** Renames TEMP over FILE, atomically. If SYNC, TEMP is synced first and the directory of
+     *  FILE after, so FILE survives a power loss. */
+    static void replace(File temp, File file, boolean sync) {
+        if (sync) {
+            force(temp);
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (sync) {
+            force(file.getParentFile());
+        }
+    }
+
+    /** Returns the temporary file FILE is written to before being renamed into place. It is
+     *  named after this process, so concurrent writers don't share it. */
+    static File tempFile(File file) {
+        return new File(file.getPath() + "." + ProcessHandle.current().pid() + ".tmp");
+    }
+
+    /** Syncs FILE, which may be a directory, to the disk. Directories can't be synced on every
+     *  platform; there they are left as they are. */
+    static void force(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException excp) {
+            if (!file.isDirectory()) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+    }
+
+    /** Returns the result of OPERATION, run holding an exclusive lock on LOCKFILE (made if
+     *  missing) against other threads and processes. Calls nested on one thread lock once. */
+    static <T> T locked(File lockFile, Supplier<T> operation) {
+        ReentrantLock lock = LOCKS.computeIfAbsent(lockFile.getAbsolutePath(), path -> new ReentrantLock());
+        lock.lock();
+        try {
+            if (lock.getHoldCount() > 1) {
+                return operation.get();
+            }
+            try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE)) {
+                // Released when the channel is closed
+                channel.lock();
+                return operation.get();
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+}
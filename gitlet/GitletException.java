@@ -4,8 +4,10 @@ package gitlet;
  *  result of .getMessage() is the error message to be printed.
  *  @author P. N. Hilfinger
  */
-class GitletException extends RuntimeException {
+public class GitletException extends RuntimeException {
 
+    /** Fixed at the value Java computes for this class. */
+    private static final long serialVersionUID = 1478317594578336713L;
 
     /** A GitletException with no message. */
     GitletException() {
@@ -0,0 +1,446 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static gitlet.Utils.join;
+
+/** A gitlet repository, for use from Java.
+ *
+ *  Each instance works on the repository rooted at one directory, so one program can work on
+ *  many repositories at once, from as many threads. Operations on the same instance run one at
+ *  a time. Nothing is printed: a failed operation throws a GitletException whose message is
+ *  what the gitlet command prints, and results come back as Status, LogEntry and MergeResult
+ *  objects. Main is the command-line interface over this class.
+ *
+ *  While an operation runs, its repository is bound to the running thread; the rest of gitlet
+ *  (Repository, Stage, Commit, ...) reaches the directories, object stores, index and caches
+ *  of the bound repository through Repository's accessors. Code running with nothing bound
+ *  uses the repository in the current directory.
+ *  @author procrastin
+ */
+public class GitletRepository {
+
+    /** Version of the layout of the .gitlet directory */
+    static final int FORMAT = 1;
+    /** Most commits kept in the commit cache */
+    private static final int COMMIT_CACHE_SIZE = 1024;
+    /** Most bytes of blob contents kept in the blob cache */
+    private static final long BLOB_CACHE_SIZE = 64L * 1024 * 1024;
+
+    /** The repository bound to each thread */
+    private static final ThreadLocal<GitletRepository> CURRENT = new ThreadLocal<>();
+    /** The repository in the current directory, made on first use */
+    private static GitletRepository workingDirectory;
+
+    /** The working directory */
+    final File root;
+    /** The .gitlet directory */
+    final File gitletDir;
+    /** Subdirectory for commits */
+    final File commitsDir;
+    /** Subdirectory for blobs */
+    final File blobsDir;
+    /** Subdirectory for trees */
+    final File treesDir;
+    /** Subdirectory holding a file per branch, in repositories made by older versions */
+    final File branchesDir;
+    /** File naming the current branch, in repositories made by older versions */
+    final File headFile;
+    /** Snapshot of the refs */
+    final File refsFile;
+    /** Journal of the changes of the refs */
+    final File refLogFile;
+    /** Commit graph file */
+    final File commitGraphFile;
+    /** Settings file */
+    final File configFile;
+    /** File holding the FORMAT of the repository, missing in repositories made by older
+     *  versions */
+    final File formatFile;
+    /** INDEX file */
+    final File indexFile;
+    /** Directory of the message index */
+    final File messagesDir;
+    /** Store holding the commits */
+    final ObjectStore commitStore;
+    /** Store holding the blobs */
+    final ObjectStore blobStore;
+    /** Store holding the trees */
+    final ObjectStore treeStore;
+
+    /** The commit graph, opened on first use */
+    CommitGraph commitGraph;
+    /** The branches and the current branch, read on first use */
+    Refs refs;
+    /** The settings, read on first use */
+    Properties settings;
+    /** The index last read or written, reused while INDEX is unchanged */
+    Stage index;
+    /** Stamp of INDEX when index was read or written */
+    Object indexStamp;
+    /** Commits read recently. An entry is only reused while the stored commit has the same
+     *  stamp, since a commit made again with the same parent and message overwrites it. */
+    final ObjectCache<Commit> commits = new ObjectCache<>(COMMIT_CACHE_SIZE, commit -> 1);
+    /** Contents of blobs read recently. Blobs are named by their contents, so an entry is
+     *  always good. */
+    final ObjectCache<byte[]> blobs = new ObjectCache<>(BLOB_CACHE_SIZE, contents -> contents.length);
+
+    /** The repository whose working directory is ROOT. It need not be initialized yet. */
+    public GitletRepository(File root) {
+        this.root = root.getAbsoluteFile();
+        this.gitletDir = join(this.root, ".gitlet");
+        this.commitsDir = join(gitletDir, "commits");
+        this.blobsDir = join(gitletDir, "blobs");
+        this.treesDir = join(gitletDir, "trees");
+        this.branchesDir = join(gitletDir, "branches");
+        this.headFile = join(gitletDir, "HEAD.txt");
+        this.refsFile = join(gitletDir, "refs");
+        this.refLogFile = join(gitletDir, "refs.log");
+        this.commitGraphFile = join(gitletDir, "commit-graph");
+        this.configFile = join(gitletDir, "config");
+        this.formatFile = join(gitletDir, "format");
+        this.indexFile = join(gitletDir, "INDEX.txt");
+        this.messagesDir = join(gitletDir, "messages");
+        this.commitStore = new ObjectStore(commitsDir);
+        this.blobStore = new ObjectStore(blobsDir);
+        this.treeStore = new ObjectStore(treesDir);
+    }
+
+    /** Returns the repository bound to the running thread, or the one in the current
+     *  directory if there is none */
+    static GitletRepository current() {
+        GitletRepository repository = CURRENT.get();
+        if (repository != null) {
+            return repository;
+        }
+        synchronized (GitletRepository.class) {
+            if (workingDirectory == null) {
+                workingDirectory = new GitletRepository(new File(System.getProperty("user.dir")));
+            }
+            return workingDirectory;
+        }
+    }
+
+    /** Returns the working directory of this repository */
+    public File root() {
+        return root;
+    }
+
+    /** Returns true if this repository has been initialized */
+    public boolean isInitialized() {
+        return gitletDir.isDirectory();
+    }
+
+    /** Creates the repository, with an initial commit on branch master */
+    public void init() {
+        init(Hashing.Algorithm.SHA1);
+    }
+
+    /** Creates the repository, whose object ids are made with FORMAT, with an initial commit
+     *  on branch master */
+    public void init(Hashing.Algorithm format) {
+        bind(() -> {
+            Repository.init(format);
+            return null;
+        });
+    }
+
+    /** Stages the working file PATH (relative to the root) for addition */
+    public void add(String path) {
+        withIndex(index -> {
+            index.add(WorkingTree.normalize(path));
+            return null;
+        });
+    }
+
+    /** Commits the staging area with MESSAGE, which must not be empty, and returns the id of
+     *  the new commit */
+    public String commit(String message) {
+        if (message.isEmpty()) {
+            throw Utils.error("Please enter a commit message.");
+        }
+        return withIndex(index -> CommitTree.commit(index, message, false, null));
+    }
+
+    /** Unstages PATH, and removes it from the working directory if it is tracked */
+    public void rm(String path) {
+        withIndex(index -> {
+            index.rm(WorkingTree.normalize(path));
+            return null;
+        });
+    }
+
+    /** Returns the history of the current commit, latest first, following first parents */
+    public List<LogEntry> log() {
+        return run(() -> CommitTree.log(CommitTree.currentCommit()));
+    }
+
+    /** Passes ACTION the history of the current commit, latest first, following first
+     *  parents: at most MAXCOUNT commits, skipping those made after UNTIL and stopping at the
+     *  first made before SINCE (in seconds since the epoch) */
+    public void log(int maxCount, long since, long until, Consumer<LogEntry> action) {
+        run(() -> {
+            CommitTree.log(CommitTree.currentCommit(), maxCount, since, until, action);
+            return null;
+        });
+    }
+
+    /** Returns every commit ever made, in order of id */
+    public List<LogEntry> globalLog() {
+        List<LogEntry> entries = new ArrayList<>();
+        globalLog(Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, entries::add);
+        return entries;
+    }
+
+    /** Passes ACTION, in order of id, the first MAXCOUNT commits made between SINCE and UNTIL
+     *  (in seconds since the epoch; Long.MIN_VALUE and Long.MAX_VALUE for no limit). Each
+     *  commit is passed as soon as it is read, while later ones are read in parallel. */
+    public void globalLog(int maxCount, long since, long until, Consumer<LogEntry> action) {
+        run(() -> {
+            Repository.globalLog(maxCount, since, until, action);
+            return null;
+        });
+    }
+
+    /** Returns the changes of the branches and of the current branch, latest first: all of
+     *  them if REF is null, or else those of the branch REF (or "HEAD" for the current branch) */
+    public List<RefLogEntry> reflog(String ref) {
+        return run(() -> Refs.get().reflog(ref));
+    }
+
+    /** Returns the ids of the commits with the given message, in sorted order */
+    public List<String> find(String message) {
+        return run(() -> Repository.find(message));
+    }
+
+    /** Returns the ids of the commits whose message contains TEXT, in sorted order */
+    public List<String> findContaining(String text) {
+        return run(() -> MessageIndex.findContaining(text));
+    }
+
+    /** Returns the ids of the commits with a message in which the regular expression REGEX is
+     *  found, in sorted order */
+    public List<String> findMatching(String regex) {
+        return run(() -> Repository.findMatching(regex));
+    }
+
+    /** Returns the branches, staged files, unstaged changes and untracked files */
+    public Status status() {
+        return withIndex(Stage::status);
+    }
+
+    /** Restores PATH in the working directory to its version in the current commit */
+    public void checkoutFile(String path) {
+        run(() -> {
+            CommitTree.checkoutFile(WorkingTree.normalize(path));
+            return null;
+        });
+    }
+
+    /** Restores PATH in the working directory to its version in the commit COMMITID, which may
+     *  be abbreviated */
+    public void checkoutFile(String commitID, String path) {
+        run(() -> {
+            CommitTree.checkoutCommitFile(commitID, WorkingTree.normalize(path));
+            return null;
+        });
+    }
+
+    /** Makes BRANCH the current branch and checks out its head commit */
+    public void checkoutBranch(String branch) {
+        withIndex(index -> {
+            Repository.checkoutBranch(branch, index);
+            return null;
+        });
+    }
+
+    /** Creates the branch NAME at the current commit */
+    public void branch(String name) {
+        run(() -> {
+            Repository.newBranch(name);
+            return null;
+        });
+    }
+
+    /** Deletes the branch NAME */
+    public void rmBranch(String name) {
+        run(() -> {
+            Repository.rmBranch(name);
+            return null;
+        });
+    }
+
+    /** Checks out the commit COMMITID, which may be abbreviated, and moves the current branch
+     *  to it */
+    public void reset(String commitID) {
+        withIndex(index -> {
+            Repository.reset(commitID, index);
+            return null;
+        });
+    }
+
+    /** Merges BRANCH into the current branch */
+    public MergeResult merge(String branch) {
+        return withIndex(index -> CommitTree.merge(branch, index));
+    }
+
+    /** Returns the id of the split point of the current branch and BRANCH, which merge starts
+     *  from: their latest common ancestor */
+    public String splitPoint(String branch) {
+        return run(() -> {
+            // Branch doesn't exist [FAILURE CASE]
+            if (!Refs.get().exists(branch)) {
+                throw Utils.error("A branch with that name does not exist.");
+            }
+            return CommitTree.findSplit(Commit.returnCommit(CommitTree.currentCommit()),
+                    Commit.returnCommit(CommitTree.otherCommit(branch)));
+        });
+    }
+
+    /** Returns the full id of the commit whose id starts with ABBREVIATION */
+    public String resolveCommit(String abbreviation) {
+        return run(() -> Commit.resolveID(abbreviation));
+    }
+
+    /** Re-keys blobs of repositories made by older versions (see Repository.migrate) */
+    public void migrate() {
+        withIndex(index -> {
+            Repository.migrate(index);
+            return null;
+        });
+    }
+
+    /** Moves all loose objects into packs */
+    public void gc() {
+        run(() -> {
+            Repository.gc();
+            return null;
+        });
+    }
+
+    /** Returns the hits and misses of the caches of commits and blob contents, e.g.
+     *  "commits: 12 hits, 3 misses, 3 cached; blobs: 0 hits, 2 misses, 2 cached" */
+    public String cacheStatistics() {
+        return "commits: " + commits + "; blobs: " + blobs;
+    }
+
+    /** Returns the commit graph, opening it on first use */
+    CommitGraph commitGraph() {
+        if (commitGraph == null) {
+            commitGraph = new CommitGraph(commitGraphFile);
+        }
+        return commitGraph;
+    }
+
+    /** Returns the settings, reading them on first use */
+    Properties settings() {
+        if (settings == null) {
+            settings = Config.read(configFile);
+        }
+        return settings;
+    }
+
+    /**
+     * [HELPER METHOD]
+     * Runs OPERATION on the index of the initialized repository, and writes the index back if
+     * the operation changed it, even if it then failed with a GitletException. An index left
+     * by any other failure is dropped.
+     */
+    private <T> T withIndex(Function<Stage, T> operation) {
+        return run(() -> {
+            Stage index = Stage.returnIndex();
+            try {
+                T result = operation.apply(index);
+                Stage.saveIndex(index);
+                return result;
+            } catch (GitletException excp) {
+                Stage.saveIndex(index);
+                throw excp;
+            } catch (RuntimeException | Error excp) {
+                Stage.forgetIndex();
+                throw excp;
+            }
+        });
+    }
+
+    /** [HELPER METHOD] Runs OPERATION on the initialized repository. Tools of this package
+     *  (e.g. RepositoryGenerator) use it to work below the public operations. */
+    <T> T run(Supplier<T> operation) {
+        return bind(() -> {
+            if (!isInitialized()) {
+                throw Utils.error("Not in an initialized Gitlet directory.");
+            }
+            reload();
+            if (!formatFile.isFile()) {
+                upgrade();
+            }
+            return operation.get();
+        });
+    }
+
+    /**
+     * [HELPER METHOD]
+     * Brings a repository made by an older version up to date (see Repository.migrate) before
+     * it is first used, so its old objects are never mixed with new ones, then records its
+     * FORMAT. Otherwise none of its files would match the blobs of their commits.
+     */
+    private void upgrade() {
+        Stage index = Stage.returnIndex();
+        Repository.migrate(index);
+        Stage.saveIndex(index);
+        Durability.writeRef(formatFile, FORMAT + "\n");
+    }
+
+    /** [HELPER METHOD] Runs OPERATION with this repository bound to the running thread, once
+     *  no other thread is running an operation on it */
+    private synchronized <T> T bind(Supplier<T> operation) {
+        GitletRepository previous = CURRENT.get();
+        CURRENT.set(this);
+        try {
+            return operation.get();
+        } finally {
+            // Objects left pending by the operation go in place before it returns
+            try {
+                commitStore.flush();
+                treeStore.flush();
+                blobStore.flush();
+            } finally {
+                restore(previous);
+            }
+        }
+    }
+
+    /** [HELPER METHOD] Binds PREVIOUS, which may be null, to the running thread again */
+    private static void restore(GitletRepository previous) {
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+
+    /**
+     * [HELPER METHOD]
+     * Drops what is kept about the repository that another process may have changed since the
+     * last operation: the settings, the commit graph, the refs and the lists of packs. The
+     * index and commits are checked against their files each time they are used.
+     */
+    private void reload() {
+        settings = null;
+        if (refs != null && !refs.isCurrent()) {
+            refs = null;
+        }
+        if (commitGraph != null && !commitGraph.isCurrent()) {
+            commitGraph = null;
+        }
+        commitStore.reload();
+        blobStore.reload();
+        treeStore.reload();
+    }
+}
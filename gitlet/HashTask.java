@@ -0,0 +1,53 @@
+package gitlet;
+
+import java.io.File;
+import java.util.concurrent.RecursiveAction;
+
+/** Hashes working files on a ForkJoinPool.
+ *
+ *  Each task covers a range of FILES and splits in half until the range is small; the halves
+ *  run in parallel. The stat data of every file is compared with its CACHED stat data (null if
+ *  none), and only files whose cached hash can't be reused are read. The stat data, with the
+ *  hash, of FILES[i] is stored in RESULTS[i], which is CACHED[i] itself if it was reused.
+ *  Files are hashed with FORMAT, as the worker threads have no repository bound.
+ *  @author procrastin
+ */
+class HashTask extends RecursiveAction {
+
+    /** Fixed at the value Java computes for this class */
+    private static final long serialVersionUID = -4191256929591932100L;
+
+    /** Ranges of at most this many files are hashed by one thread */
+    private static final int THRESHOLD = 8;
+
+    private final File[] files;
+    private final Stage.StatEntry[] cached;
+    private final Stage.StatEntry[] results;
+    private final int from;
+    private final int to;
+    private final Hashing.Algorithm format;
+
+    /** A task hashing FILES[FROM] to FILES[TO - 1] with FORMAT */
+    HashTask(File[] files, Stage.StatEntry[] cached, Stage.StatEntry[] results, int from, int to,
+             Hashing.Algorithm format) {
+        this.files = files;
+        this.cached = cached;
+        this.results = results;
+        this.from = from;
+        this.to = to;
+        this.format = format;
+    }
+
+    @Override
+    protected void compute() {
+        if (to - from <= THRESHOLD) {
+            for (int i = from; i < to; i += 1) {
+                results[i] = Stage.StatEntry.hash(files[i], cached[i], format);
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        invokeAll(new HashTask(files, cached, results, from, middle, format),
+                new HashTask(files, cached, results, middle, to, format));
+    }
+}
@@ -0,0 +1,265 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Locale;
+
+/** Hashes, and the ids of objects.
+ *
+ *  Each thread keeps one MessageDigest per algorithm and reuses it (getInstance is slow), along
+ *  with the buffers strings and files are hashed through, so hashing allocates little beyond
+ *  the resulting hex string, which is built from a table. Use it as
+ *      try (Hashing.Hasher hasher = Hashing.start(algorithm)) {
+ *          hasher.update(...);  // any number of times
+ *          String hex = hasher.hex();
+ *      }
+ *  A Hasher belongs to its thread, and must not be used after hex() or close(). Closing it
+ *  frees it even when hashing fails part way, which hex() alone would not.
+ *
+ *  Object ids (of blobs, trees and commits) use the algorithm of the repository, which is
+ *  chosen when it is created (init --object-format=sha256) and kept as core.objectFormat in
+ *  its config; other hashes (index checksums, message index buckets, pack names) are SHA-1.
+ *  @author procrastin
+ */
+public class Hashing {
+
+    /** The algorithms object ids can be made with */
+    public enum Algorithm {
+        SHA1("SHA-1", "sha1", 40), SHA256("SHA-256", "sha256", 64);
+
+        /** The name of the algorithm for MessageDigest */
+        private final String javaName;
+        /** The name of the algorithm in settings and options */
+        private final String settingName;
+        /** The length of its hashes as hexadecimal numerals */
+        private final int hexLength;
+
+        Algorithm(String javaName, String settingName, int hexLength) {
+            this.javaName = javaName;
+            this.settingName = settingName;
+            this.hexLength = hexLength;
+        }
+
+        /** Returns the length of its hashes as hexadecimal numerals */
+        public int hexLength() {
+            return hexLength;
+        }
+
+        /** Returns the name of the algorithm in settings and options, e.g. "sha256" */
+        public String settingName() {
+            return settingName;
+        }
+
+        /** Returns the algorithm named NAME in settings and options, or null if there is none */
+        public static Algorithm named(String name) {
+            for (Algorithm algorithm : values()) {
+                if (algorithm.settingName.equals(name.trim().toLowerCase(Locale.ROOT))) {
+                    return algorithm;
+                }
+            }
+            return null;
+        }
+    }
+
+    /** Hexadecimal digits, by value */
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    /** Size of the buffers strings and files are hashed through */
+    private static final int BUFFER_SIZE = ObjectStore.BUFFER_SIZE;
+
+    /** The hasher of each algorithm each thread reuses */
+    private static final ThreadLocal<Hasher[]> HASHERS =
+            ThreadLocal.withInitial(() -> new Hasher[Algorithm.values().length]);
+
+    /** Returns a hasher of ALGORITHM, with nothing hashed yet */
+    public static Hasher start(Algorithm algorithm) {
+        Hasher[] hashers = HASHERS.get();
+        Hasher hasher = hashers[algorithm.ordinal()];
+        if (hasher == null) {
+            hasher = new Hasher(algorithm);
+            hashers[algorithm.ordinal()] = hasher;
+        } else if (hasher.busy) {
+            // Already hashing something else on this thread
+            hasher = new Hasher(algorithm);
+        }
+        hasher.busy = true;
+        return hasher;
+    }
+
+    /** Returns the algorithm object ids of the current repository are made with */
+    public static Algorithm objectFormat() {
+        Algorithm algorithm = Algorithm.named(Config.get("core.objectFormat", "sha1"));
+        return algorithm == null ? Algorithm.SHA1 : algorithm;
+    }
+
+    /** Returns the id, in the current repository, of the object of concatenation of PARTS,
+     *  which may be any mixture of byte arrays and Strings */
+    public static String id(Object... parts) {
+        try (Hasher hasher = start(objectFormat())) {
+            for (Object part : parts) {
+                hasher.update(part);
+            }
+            return hasher.hex();
+        }
+    }
+
+    /** Returns the id, in the current repository, of the object of PREFIX followed by the
+     *  contents of FILE, which is read through a fixed-size buffer */
+    public static String id(String prefix, File file) {
+        return id(objectFormat(), prefix, file);
+    }
+
+    /** Returns the id made with FORMAT of the object of PREFIX followed by the contents of
+     *  FILE, which is read through a fixed-size buffer */
+    public static String id(Algorithm format, String prefix, File file) {
+        try (Hasher hasher = start(format)) {
+            return hasher.update(prefix).update(file).hex();
+        }
+    }
+
+    /** Returns whether LENGTH is the length of the hexadecimal ids of some algorithm */
+    static boolean isIDLength(int length) {
+        for (Algorithm algorithm : Algorithm.values()) {
+            if (algorithm.hexLength == length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns BYTES as a lowercase hexadecimal numeral */
+    static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i += 1) {
+            hex[2 * i] = HEX_DIGITS[(bytes[i] >> 4) & 0xf];
+            hex[2 * i + 1] = HEX_DIGITS[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /** A digest being computed, see Hashing */
+    public static class Hasher implements AutoCloseable {
+
+        /** The digest, reused by every use of this hasher */
+        private final MessageDigest digest;
+        /** Buffer strings are encoded and streams read through, made on first use */
+        private byte[] encoded;
+        /** Whether this hasher is in use */
+        private boolean busy;
+
+        /** [HELPER METHOD] A hasher of ALGORITHM */
+        private Hasher(Algorithm algorithm) {
+            try {
+                digest = MessageDigest.getInstance(algorithm.javaName);
+            } catch (NoSuchAlgorithmException excp) {
+                throw new IllegalArgumentException("System does not support " + algorithm.javaName);
+            }
+        }
+
+        /** Hashes BYTES */
+        public Hasher update(byte[] bytes) {
+            digest.update(bytes);
+            return this;
+        }
+
+        /** Hashes LENGTH bytes of BYTES from START */
+        public Hasher update(byte[] bytes, int start, int length) {
+            digest.update(bytes, start, length);
+            return this;
+        }
+
+        /** Hashes the remaining bytes of BYTES, which are then consumed */
+        public Hasher update(ByteBuffer bytes) {
+            digest.update(bytes);
+            return this;
+        }
+
+        /** Hashes TEXT as UTF-8. ASCII text is encoded through a reused buffer. */
+        public Hasher update(String text) {
+            if (encoded == null) {
+                encoded = new byte[BUFFER_SIZE];
+            }
+            int length = text.length();
+            int start = 0;
+            while (start < length) {
+                int end = Math.min(length, start + encoded.length);
+                for (int i = start; i < end; i += 1) {
+                    char c = text.charAt(i);
+                    if (c >= 0x80) {
+                        // Not ASCII: hash the rest as Java encodes it
+                        digest.update(encoded, 0, i - start);
+                        digest.update(text.substring(i).getBytes(StandardCharsets.UTF_8));
+                        return this;
+                    }
+                    encoded[i - start] = (byte) c;
+                }
+                digest.update(encoded, 0, end - start);
+                start = end;
+            }
+            return this;
+        }
+
+        /** Hashes PART, a byte array or a String */
+        public Hasher update(Object part) {
+            if (part instanceof byte[]) {
+                return update((byte[]) part);
+            } else if (part instanceof String) {
+                return update((String) part);
+            }
+            throw new IllegalArgumentException("improper type to hash");
+        }
+
+        /** Hashes every byte of IN, which is read through a fixed-size buffer and closed */
+        public Hasher update(InputStream in) {
+            if (encoded == null) {
+                encoded = new byte[BUFFER_SIZE];
+            }
+            try (InputStream stream = in) {
+                int n;
+                while ((n = stream.read(encoded)) > 0) {
+                    digest.update(encoded, 0, n);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return this;
+        }
+
+        /** Hashes the contents of FILE, read through a reused buffer */
+        public Hasher update(File file) {
+            try {
+                return update(new FileInputStream(file));
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+
+        /** Returns the digest of everything hashed, and frees this hasher */
+        public byte[] digest() {
+            try {
+                return digest.digest();
+            } finally {
+                busy = false;
+            }
+        }
+
+        /** Returns the digest of everything hashed as lowercase hex, and frees this hasher */
+        public String hex() {
+            return toHex(digest());
+        }
+
+        /** Frees this hasher, dropping anything hashed since the last digest */
+        @Override
+        public void close() {
+            if (busy) {
+                digest.reset();
+                busy = false;
+            }
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package gitlet;
+
+/** One commit as shown by log and global-log.
+ *  @author procrastin
+ */
+public class LogEntry {
+
+    private final String id;
+    private final String parent;
+    private final String secondParent;
+    private final String date;
+    private final String message;
+    private final boolean isMergeCommit;
+
+    /** The entry of the commit ID with parents PARENT and SECONDPARENT (null if none), made
+     *  on DATE (as log prints it) with MESSAGE */
+    LogEntry(String id, String parent, String secondParent, String date, String message,
+             boolean isMergeCommit) {
+        this.id = id;
+        this.parent = parent;
+        this.secondParent = secondParent;
+        this.date = date;
+        this.message = message;
+        this.isMergeCommit = isMergeCommit;
+    }
+
+    /** The entry of COMMIT */
+    LogEntry(Commit commit) {
+        this.id = commit.hash();
+        this.parent = commit.getParent();
+        this.secondParent = commit.getSecondParent();
+        this.date = commit.getTimestamp();
+        this.message = commit.getMessage();
+        this.isMergeCommit = commit.isMergeCommit();
+    }
+
+    public String getID() {
+        return id;
+    }
+
+    /** Returns the id of the first parent, or null for the initial commit */
+    public String getParent() {
+        return parent;
+    }
+
+    /** Returns the id of the merged-in parent of a merge commit, or null */
+    public String getSecondParent() {
+        return secondParent;
+    }
+
+    /** Returns the date of the commit, formatted as log prints it */
+    public String getDate() {
+        return date;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public boolean isMergeCommit() {
+        return isMergeCommit;
+    }
+
+    /** Returns the entry as log prints it */
+    @Override
+    public String toString() {
+        if (isMergeCommit) {
+            return "=== \ncommit " + id + "\nMerge: " + parent.substring(0, 7) + " " + secondParent.substring(0, 7) + "\nDate: " + date + "\n" + message + "\n";
+        }
+        return "=== \ncommit " + id + "\nDate: " + date + "\n" + message + "\n";
+    }
+}
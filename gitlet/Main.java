@@ -1,16 +1,53 @@
 package gitlet;
 
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
+import java.util.function.BiConsumer;
 
 /** Driver class for Gitlet, a subset of the Git version-control system.
  *  @author TODO
  */
 public class Main {
 
+    /** Formats of the dates given to --since and --until */
+    private static final String[] DATE_FORMATS = {
+        "yyyy-MM-dd", "yyyy-MM-dd HH:mm", "yyyy-MM-dd HH:mm:ss", "yyyy-MM-dd'T'HH:mm:ss",
+        "EEE MMM d HH:mm:ss yyyy Z"
+    };
+
     /** Usage: java gitlet.Main ARGS, where ARGS contains
      *  <COMMAND> <OPERAND1> <OPERAND2> ... 
      */
     public static void main(String[] args) {
+        File root = new File(System.getProperty("user.dir"));
+        // A daemon serving the repository runs the command instead, if one is up
+        int status = Client.send(root, args);
+        if (status == Client.NOT_SENT) {
+            run(new GitletRepository(root), args);
+        } else if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /** Runs the command ARGS on REPOSITORY and returns once it is done. Failures that end a
+     *  command are reported as a GitletException, whose message is printed. */
+    public static void run(GitletRepository repository, String[] args) {
+        try {
+            dispatch(repository, args);
+        } catch (GitletException excp) {
+            System.out.println(excp.getMessage());
+        }
+    }
+
+    /** [HELPER METHOD] Runs the command ARGS on REPOSITORY, printing its results */
+    private static void dispatch(GitletRepository repository, String[] args) {
         /** TODO: what if args is empty?
          *  TODO: user inputs command that doesn't exist
          *  TODO: wrong number or format of operands
@@ -20,66 +57,82 @@ public class Main {
         // User input is blank
         if (args.length == 0) {
             System.out.println("Please enter a command.");
-            System.exit(0);
+            return;
         }
 
         // Gitlet initialization
         if (args[0].equals("init")) {
-            Repository.init();
-            System.exit(0);
+            repository.init(parseObjectFormat(args));
+            return;
         }
 
         // Gitlet hasn't been initialized -> abort
-        if (!Repository.GITLET_DIR.exists()) {
+        if (!repository.isInitialized()) {
             System.out.println("Not in an initialized Gitlet directory.");
-            System.exit(0);
+            return;
         }
 
-        // Unload index file that represents the staging area
-        Stage index = Stage.returnIndex();
-
         // Function calls
         String firstArg = args[0];
         switch(firstArg) {
             case "add":
                 validateNumArgs(args,2);
-                index.add(args[1]);
+                repository.add(args[1]);
                 break;
             case "commit":
                 validateNumArgs(args,2);
-                if (args[1].equals("")) {
-                    System.out.println("Please enter a commit message.");
-                }
-                CommitTree.commit(index, args[1], false, null);
+                repository.commit(args[1]);
                 break;
             case "rm":
                 validateNumArgs(args,2);
-                index.rm(args[1]);
+                repository.rm(args[1]);
                 break;
             case "log":
-                validateNumArgs(args,1);
-                String currentCommitID = CommitTree.currentCommit();
-                CommitTree.log(currentCommitID);
+                printLog(args, (options, out) -> repository.log(options.maxCount, options.since,
+                        options.until, out::println));
                 break;
             case "global-log":
-                validateNumArgs(args,1);
-                Repository.globalLog();
+                printLog(args, (options, out) -> repository.globalLog(options.maxCount, options.since,
+                        options.until, out::println));
+                break;
+            case "reflog":
+                if (args.length > 2) {
+                    throw Utils.error("Incorrect operands.");
+                }
+                PrintStream out = bufferedOut();
+                for (RefLogEntry entry : repository.reflog(args.length == 2 ? args[1] : null)) {
+                    out.println(entry);
+                }
+                out.flush();
                 break;
             case "find":
-                validateNumArgs(args,2);
-                Repository.find(args[1]);
+                List<String> found;
+                if (args.length == 3 && args[1].equals("--contains")) {
+                    found = repository.findContaining(args[2]);
+                } else if (args.length == 3 && args[1].equals("--regex")) {
+                    found = repository.findMatching(args[2]);
+                } else {
+                    validateNumArgs(args,2);
+                    found = repository.find(args[1]);
+                }
+                if (found.isEmpty()) {
+                    System.out.println("Found no commit with that message.");
+                }
+                for (String id : found) {
+                    System.out.println(id);
+                }
                 break;
             case "status":
                 validateNumArgs(args,1);
-                index.printStatus();
+                printStatus(repository.status());
                 break;
             case "checkout":
                 if (args.length == 2) {
-                    Repository.checkoutBranch(args[1], index);
+                    repository.checkoutBranch(args[1]);
                 } else if (args.length == 3 && args[1].equals("--")) {
-                    CommitTree.checkoutFile(args[2]);
+                    repository.checkoutFile(args[2]);
                 } else if (args.length == 4 && args[2].equals("--")) {
-                    CommitTree.checkoutCommitFile(args[1],args[3]);
+                    repository.checkoutFile(args[1], args[3]);
                 }
                 else {
                     System.out.println("Incorrect operands.");
@@ -87,35 +140,213 @@ public class Main {
                 break;
             case "branch":
                 validateNumArgs(args,2);
-                Repository.newBranch(args[1]);
+                repository.branch(args[1]);
                 break;
             case "rm-branch":
                 validateNumArgs(args,2);
-                Repository.rmBranch(args[1]);
+                repository.rmBranch(args[1]);
                 break;
             case "reset":
                 validateNumArgs(args,2);
-                Repository.reset(args[1], index);
+                repository.reset(args[1]);
                 break;
             case "merge":
                 validateNumArgs(args, 2);
-                CommitTree.merge(args[1], index);
+                printMerge(repository.merge(args[1]));
+                break;
+            case "migrate":
+                validateNumArgs(args, 1);
+                repository.migrate();
+                break;
+            case "gc":
+                validateNumArgs(args, 1);
+                repository.gc();
+                break;
+            case "daemon":
+                // A running daemon is sent these by main instead
+                if (args.length == 2 && args[1].equals("stop")) {
+                    System.out.println("No daemon is running.");
+                    return;
+                }
+                if (args.length == 2 && args[1].equals("start")) {
+                    Daemon.start(repository);
+                    return;
+                }
+                validateNumArgs(args, 1);
+                Daemon.serve(repository);
                 break;
             default:
                 System.out.println("No command with that name exists.");
-                System.exit(0);
+        }
+    }
+
+    /** [HELPER METHOD] Runs the log or global-log command ARGS, whose LISTING passes the
+     *  entries to show to a stream, printing them through a buffer */
+    private static void printLog(String[] args, BiConsumer<LogOptions, PrintStream> listing) {
+        LogOptions options = parseLogOptions(args);
+        PrintStream out = bufferedOut();
+        try {
+            listing.accept(options, out);
+        } finally {
+            out.flush();
+        }
+    }
 
+    /** Options of log and global-log */
+    private static class LogOptions {
+        /** Most commits shown */
+        private int maxCount = Integer.MAX_VALUE;
+        /** Time (in seconds since the epoch) of the oldest commit shown */
+        private long since = Long.MIN_VALUE;
+        /** Time (in seconds since the epoch) of the newest commit shown */
+        private long until = Long.MAX_VALUE;
+    }
+
+    /** [HELPER METHOD] Returns the options given after the command in ARGS: "-n N" or
+     *  "--max-count=N", "--since=DATE" and "--until=DATE" (the "=" may be a separate argument
+     *  instead), and, for log, "--first-parent" (which is what log always follows) */
+    private static LogOptions parseLogOptions(String[] args) {
+        LogOptions options = new LogOptions();
+        for (int i = 1; i < args.length; i += 1) {
+            String name = args[i];
+            if (name.equals("--first-parent") && args[0].equals("log")) {
+                // Accepted as git does, though log never follows other parents anyway
+                continue;
+            }
+            String value = null;
+            int equals = name.indexOf('=');
+            if (name.startsWith("--") && equals > 0) {
+                value = name.substring(equals + 1);
+                name = name.substring(0, equals);
+            } else if (i + 1 < args.length) {
+                value = args[i + 1];
+            }
+            if (value == null) {
+                throw Utils.error("Incorrect operands.");
+            }
+            switch (name) {
+                case "-n":
+                case "--max-count":
+                    try {
+                        options.maxCount = Integer.parseInt(value);
+                    } catch (NumberFormatException excp) {
+                        throw Utils.error("Incorrect operands.");
+                    }
+                    if (options.maxCount < 0) {
+                        throw Utils.error("Incorrect operands.");
+                    }
+                    break;
+                case "--since":
+                    options.since = parseDate(value);
+                    break;
+                case "--until":
+                    options.until = parseDate(value);
+                    break;
+                default:
+                    throw Utils.error("Incorrect operands.");
+            }
+            if (!args[i].contains("=")) {
+                i += 1;
+            }
+        }
+        return options;
+    }
+
+    /** [HELPER METHOD] Returns the object format of the init command ARGS: SHA-1 unless
+     *  "--object-format=sha256" (the "=" may be a separate argument instead) is given */
+    private static Hashing.Algorithm parseObjectFormat(String[] args) {
+        String value;
+        if (args.length == 1) {
+            return Hashing.Algorithm.SHA1;
+        } else if (args.length == 2 && args[1].startsWith("--object-format=")) {
+            value = args[1].substring("--object-format=".length());
+        } else if (args.length == 3 && args[1].equals("--object-format")) {
+            value = args[2];
+        } else {
+            throw Utils.error("Incorrect operands.");
+        }
+        Hashing.Algorithm format = Hashing.Algorithm.named(value);
+        // Unknown algorithm [FAILURE CASE]
+        if (format == null) {
+            throw Utils.error("Unknown object format: %s", value);
+        }
+        return format;
+    }
+
+    /** [HELPER METHOD] Returns DATE, given as "2024-05-01", "2024-05-01 13:45[:30]" (local time)
+     *  or as log prints dates, in seconds since the epoch */
+    private static long parseDate(String date) {
+        for (String format : DATE_FORMATS) {
+            SimpleDateFormat formatter = new SimpleDateFormat(format, Locale.ENGLISH);
+            formatter.setLenient(false);
+            ParsePosition position = new ParsePosition(0);
+            Date parsed = formatter.parse(date, position);
+            if (parsed != null && position.getIndex() == date.length()) {
+                return parsed.getTime() / 1000;
+            }
+        }
+        throw Utils.error("Invalid date: %s", date);
+    }
+
+    /** [HELPER METHOD] Returns a stream printing to System.out through a large buffer, for
+     *  commands printing many lines. It must be flushed. */
+    private static PrintStream bufferedOut() {
+        return new PrintStream(new BufferedOutputStream(System.out, ObjectStore.BUFFER_SIZE), false,
+                Charset.defaultCharset());
+    }
+
+    /** [HELPER METHOD] Prints STATUS as status does */
+    private static void printStatus(Status status) {
+        System.out.println("=== Branches ===");
+        for (String branch : status.getBranches()) {
+            if (branch.equals(status.getCurrentBranch())) {
+                System.out.print("*");
+            }
+            System.out.println(branch);
         }
 
-        // Serialize the modified staging area
-        Stage.saveIndex(index);
+        System.out.println("\n=== Staged Files ===");
+        for (String file : status.getStaged()) {
+            System.out.println(file);
+        }
+
+        System.out.println("\n=== Removed Files ===");
+        for (String file : status.getRemoved()) {
+            System.out.println(file);
+        }
+
+        System.out.println("\n=== Modifications Not Staged For Commit ===");
+        for (Status.Change change : status.getChanges()) {
+            System.out.println(change);
+        }
+
+        System.out.println("\n=== Untracked Files ===");
+        for (String file : status.getUntracked()) {
+            System.out.println(file);
+        }
+        System.out.println();
+    }
+
+    /** [HELPER METHOD] Prints what merge did, as described by RESULT */
+    private static void printMerge(MergeResult result) {
+        switch (result.getOutcome()) {
+            case ALREADY_MERGED:
+                System.out.println("Given branch is an ancestor of the current branch.");
+                break;
+            case FAST_FORWARDED:
+                System.out.println("Current branch fast-forwarded.");
+                break;
+            default:
+                if (result.hasConflict()) {
+                    System.out.println("Encountered a merge conflict.");
+                }
+        }
     }
 
 
     public static void validateNumArgs(String[] args, int n) {
         if (args.length != n) {
-            System.out.println("Incorrect operands.");
-            System.exit(0);
+            throw Utils.error("Incorrect operands.");
         }
     }
 
@@ -0,0 +1,67 @@
+package gitlet;
+
+import java.util.PriorityQueue;
+
+/** Finds the split point of two commits: their latest common ancestor.
+ *
+ *  Both commits are walked back at the same time, following both parents of merge commits,
+ *  and every commit reached is marked with the side(s) it was reached from, in an array
+ *  indexed by graph position. Commits are visited in decreasing generation order, so when a
+ *  commit is taken off the queue all its descendants have been visited and its marks are
+ *  final. The first commit marked from both sides is therefore the common ancestor with the
+ *  highest generation, which can't be an ancestor of any other common ancestor. Everything
+ *  with a lower generation is never read.
+ *  @author procrastin
+ */
+public class MergeBase {
+
+    private static final int FROM_FIRST = 1;
+    private static final int FROM_SECOND = 2;
+    private static final int FROM_BOTH = FROM_FIRST | FROM_SECOND;
+    private static final int VISITED = 4;
+
+    /** Returns the position in GRAPH of the latest common ancestor of the commits at FIRST and
+     *  SECOND, or CommitGraph.NONE if they don't share any history */
+    public static int find(CommitGraph graph, int first, int second) {
+        // Marks of each commit, indexed by graph position
+        byte[] marks = new byte[graph.size()];
+        PriorityQueue<Integer> queue = new PriorityQueue<>(
+                (a, b) -> Integer.compare(graph.generation(b), graph.generation(a)));
+
+        mark(marks, queue, first, FROM_FIRST);
+        mark(marks, queue, second, FROM_SECOND);
+        while (!queue.isEmpty()) {
+            int commit = queue.poll();
+            if ((marks[commit] & VISITED) != 0) {
+                continue;
+            }
+            marks[commit] |= VISITED;
+            int sides = marks[commit] & FROM_BOTH;
+            if (sides == FROM_BOTH) {
+                return commit;
+            }
+            mark(marks, queue, graph.parent(commit), sides);
+            mark(marks, queue, graph.secondParent(commit), sides);
+        }
+        return CommitGraph.NONE;
+    }
+
+    /** Returns the id of the latest common ancestor of the commits FIRSTID and SECONDID */
+    public static String find(String firstID, String secondID) {
+        CommitGraph graph = CommitGraph.get();
+        int base = find(graph, graph.position(firstID), graph.position(secondID));
+        return base == CommitGraph.NONE ? null : graph.id(base);
+    }
+
+    /** [HELPER METHOD] Adds SIDES to the marks of COMMIT and queues it if that changed them */
+    private static void mark(byte[] marks, PriorityQueue<Integer> queue, int commit, int sides) {
+        if (commit == CommitGraph.NONE) {
+            return;
+        }
+        int old = marks[commit] & FROM_BOTH;
+        if ((old | sides) != old) {
+            marks[commit] |= sides;
+            queue.add(commit);
+        }
+    }
+}
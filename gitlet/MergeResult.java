@@ -0,0 +1,42 @@
+package gitlet;
+
+/** What merging a branch into the current branch did.
+ *  @author procrastin
+ */
+public class MergeResult {
+
+    /** The ways a merge can end */
+    public enum Outcome {
+        /** The given branch was already part of the current branch; nothing changed */
+        ALREADY_MERGED,
+        /** The current branch was behind the given branch and was moved to it */
+        FAST_FORWARDED,
+        /** A merge commit was made */
+        MERGED
+    }
+
+    private final Outcome outcome;
+    private final boolean conflict;
+    private final String commitID;
+
+    MergeResult(Outcome outcome, boolean conflict, String commitID) {
+        this.outcome = outcome;
+        this.conflict = conflict;
+        this.commitID = commitID;
+    }
+
+    public Outcome getOutcome() {
+        return outcome;
+    }
+
+    /** Returns true if some files were changed in both branches and were committed with
+     *  conflict markers */
+    public boolean hasConflict() {
+        return conflict;
+    }
+
+    /** Returns the id of the merge commit, or null if none was made */
+    public String getCommitID() {
+        return commitID;
+    }
+}
@@ -0,0 +1,269 @@
+package gitlet;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/** Index of commit messages, so find doesn't read every commit.
+ *
+ *  .gitlet/messages holds three kinds of files, appended to as commits are made:
+ *      exact/<xx>   "<commit id> <SHA-1 of message>" lines, bucketed by the first two hex digits
+ *                   of the message's SHA-1
+ *      tokens/<xx>  "<token> <commit id>" lines for every token (run of letters and digits,
+ *                   lowercased) of a message, bucketed by the first two hex digits of the
+ *                   token's SHA-1
+ *      log          "<commit id> <message>" lines, with '\' and line breaks escaped
+ *  Finding a message reads one exact bucket. Finding messages containing a text reads the token
+ *  buckets of the words the text is sure to contain whole and only checks the commits listed
+ *  in all of them; texts without such a word, and regular expressions, are checked against
+ *  log, which is still far cheaper than reading every commit.
+ *
+ *  Repositories made before the index existed have it built on first use.
+ *  @author procrastin
+ */
+public class MessageIndex {
+
+    /** Number of leading hex digits of a hash naming its bucket */
+    private static final int BUCKET_LENGTH = 2;
+
+    /** Records that the commit ID, just saved, has MESSAGE */
+    public static void add(String id, String message) {
+        File dir = Repository.messagesDir();
+        if (!dir.isDirectory()) {
+            // Builds it from every commit, this one included
+            build(dir);
+            return;
+        }
+        Map<File, StringBuilder> lines = new TreeMap<>();
+        addLines(dir, id, message, lines);
+        for (Map.Entry<File, StringBuilder> entry : lines.entrySet()) {
+            append(entry.getKey(), entry.getValue().toString());
+        }
+    }
+
+    /** Returns the ids of the commits with exactly MESSAGE, in sorted order */
+    public static List<String> find(String message) {
+        String hash = Utils.sha1(message);
+        Set<String> ids = new TreeSet<>();
+        for (String line : readLines(bucket(index(), "exact", hash))) {
+            int space = line.indexOf(' ');
+            if (line.substring(space + 1).equals(hash)) {
+                ids.add(line.substring(0, space));
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /** Returns the ids of the commits whose message contains TEXT, in sorted order */
+    public static List<String> findContaining(String text) {
+        Set<String> words = wholeTokens(text);
+        if (words.isEmpty()) {
+            return scan(message -> message.contains(text));
+        }
+
+        // Commits having every word of TEXT
+        Set<String> candidates = null;
+        for (String word : words) {
+            Set<String> ids = new TreeSet<>();
+            for (String line : readLines(bucket(index(), "tokens", Utils.sha1(word)))) {
+                int space = line.indexOf(' ');
+                if (line.substring(0, space).equals(word)) {
+                    ids.add(line.substring(space + 1));
+                }
+            }
+            if (candidates == null) {
+                candidates = ids;
+            } else {
+                candidates.retainAll(ids);
+            }
+        }
+
+        List<String> found = new ArrayList<>();
+        for (String id : candidates) {
+            if (Commit.returnCommit(id).getMessage().contains(text)) {
+                found.add(id);
+            }
+        }
+        return found;
+    }
+
+    /** Returns the ids of the commits with a message in which PATTERN is found, in sorted
+     *  order */
+    public static List<String> findMatching(Pattern pattern) {
+        return scan(message -> pattern.matcher(message).find());
+    }
+
+    /**
+     * [HELPER METHOD]
+     * Returns the ids of the commits whose message satisfies TEST, in sorted order, reading
+     * the messages from log
+     */
+    private static List<String> scan(Predicate<String> test) {
+        Set<String> ids = new TreeSet<>();
+        for (String line : readLines(Utils.join(index(), "log"))) {
+            int space = line.indexOf(' ');
+            if (test.test(unescape(line.substring(space + 1)))) {
+                ids.add(line.substring(0, space));
+            }
+        }
+        return new ArrayList<>(ids);
+    }
+
+    /** [HELPER METHOD] Returns the index directory, building it first if it doesn't exist */
+    private static File index() {
+        File dir = Repository.messagesDir();
+        if (!dir.isDirectory()) {
+            build(dir);
+        }
+        return dir;
+    }
+
+    /**
+     * [HELPER METHOD]
+     * Builds the index of every stored commit into DIR. It is written to a directory beside
+     * DIR and renamed into place, so an interrupted build leaves no partial index.
+     */
+    private static void build(File dir) {
+        Map<File, StringBuilder> lines = new TreeMap<>();
+        File building = Durability.tempFile(dir);
+        delete(building);
+        for (String id : Repository.commitStore().ids()) {
+            addLines(building, id, Commit.returnCommit(id).getMessage(), lines);
+        }
+        for (Map.Entry<File, StringBuilder> entry : lines.entrySet()) {
+            append(entry.getKey(), entry.getValue().toString());
+        }
+        if (!building.renameTo(dir)) {
+            throw new IllegalArgumentException("could not create " + dir);
+        }
+    }
+
+    /** [HELPER METHOD] Adds to LINES, by file of the index in DIR, the lines recording that
+     *  commit ID has MESSAGE */
+    private static void addLines(File dir, String id, String message, Map<File, StringBuilder> lines) {
+        String hash = Utils.sha1(message);
+        lines.computeIfAbsent(bucket(dir, "exact", hash), k -> new StringBuilder())
+                .append(id).append(' ').append(hash).append('\n');
+        for (String token : tokens(message)) {
+            lines.computeIfAbsent(bucket(dir, "tokens", Utils.sha1(token)), k -> new StringBuilder())
+                    .append(token).append(' ').append(id).append('\n');
+        }
+        lines.computeIfAbsent(Utils.join(dir, "log"), k -> new StringBuilder())
+                .append(id).append(' ').append(escape(message)).append('\n');
+    }
+
+    /** [HELPER METHOD] Returns the distinct tokens of TEXT: its runs of letters and digits,
+     *  lowercased */
+    static Set<String> tokens(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i += 1) {
+            boolean word = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /** [HELPER METHOD] Returns the tokens of TEXT that any message containing TEXT has as
+     *  tokens too: those with a non-word character of TEXT on both sides */
+    private static Set<String> wholeTokens(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i < text.length(); i += 1) {
+            boolean word = Character.isLetterOrDigit(text.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                if (start > 0) {
+                    tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                }
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /** [HELPER METHOD] Returns the file of the index in DIR holding KIND entries whose hash
+     *  is HASH */
+    private static File bucket(File dir, String kind, String hash) {
+        return Utils.join(dir, kind, hash.substring(0, BUCKET_LENGTH));
+    }
+
+    /** [HELPER METHOD] Appends TEXT to FILE, creating it if needed */
+    private static void append(File file, String text) {
+        file.getParentFile().mkdirs();
+        try (OutputStream out = new FileOutputStream(file, true)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** [HELPER METHOD] Returns the lines of FILE, or none if it doesn't exist */
+    private static List<String> readLines(File file) {
+        List<String> lines = new ArrayList<>();
+        if (!file.isFile()) {
+            return lines;
+        }
+        try (BufferedReader in = new BufferedReader(new FileReader(file, StandardCharsets.UTF_8),
+                ObjectStore.BUFFER_SIZE)) {
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                lines.add(line);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        return lines;
+    }
+
+    /** [HELPER METHOD] Deletes FILE and everything under it */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /** [HELPER METHOD] Returns MESSAGE with '\' and line breaks escaped, to fit on one line */
+    private static String escape(String message) {
+        return message.replace("\\", "\\\\").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    /** [HELPER METHOD] Reverses escape */
+    private static String unescape(String escaped) {
+        StringBuilder message = new StringBuilder(escaped.length());
+        for (int i = 0; i < escaped.length(); i += 1) {
+            char c = escaped.charAt(i);
+            if (c == '\\' && i + 1 < escaped.length()) {
+                i += 1;
+                c = escaped.charAt(i);
+                message.append(c == 'n' ? '\n' : c == 'r' ? '\r' : c);
+            } else {
+                message.append(c);
+            }
+        }
+        return message.toString();
+    }
+}
@@ -0,0 +1,115 @@
+package gitlet;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/** A bounded, least-recently-used cache of objects read from an ObjectStore, by id.
+ *
+ *  Each entry weighs what WEIGHER says (1 for a cache bounded by count, the length for one
+ *  bounded by bytes); the least recently used entries are dropped once the total exceeds the
+ *  capacity, and a single value heavier than an eighth of the capacity is never kept. An entry
+ *  may carry the stamp of the stored object it was read from (see ObjectStore.stamp) and is
+ *  then only reused while the object has the same stamp. Lookups count as hits or misses.
+ *
+ *  Values are shared between callers, which must not modify them. Safe for use from several
+ *  threads; loading happens outside the lock, so two threads missing at once both load.
+ *  @author procrastin
+ */
+class ObjectCache<V> {
+
+    /** Most total weight kept */
+    private final long capacity;
+    /** Weight of each value */
+    private final ToLongFunction<V> weigher;
+    /** Entries, least recently used first */
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /** Total weight of the entries */
+    private long weight;
+    /** Number of lookups answered from the cache */
+    private long hits;
+    /** Number of lookups that had to load */
+    private long misses;
+
+    /** A cache holding at most CAPACITY weight of values, each weighing what WEIGHER says */
+    ObjectCache(long capacity, ToLongFunction<V> weigher) {
+        this.capacity = capacity;
+        this.weigher = weigher;
+    }
+
+    /** Returns the value for ID, if it was cached from the stored object having STAMP, or
+     *  else what LOADER returns for ID, which is cached */
+    V get(String id, Object stamp, Function<String, V> loader) {
+        synchronized (this) {
+            Entry<V> entry = entries.get(id);
+            if (entry != null && Objects.equals(entry.stamp, stamp)) {
+                hits += 1;
+                return entry.value;
+            }
+            misses += 1;
+        }
+        V value = loader.apply(id);
+        put(id, stamp, value);
+        return value;
+    }
+
+    /** Drops every entry */
+    synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    /** Returns the number of lookups answered from the cache */
+    synchronized long hits() {
+        return hits;
+    }
+
+    /** Returns the number of lookups that had to load */
+    synchronized long misses() {
+        return misses;
+    }
+
+    /** Returns the number of values cached */
+    synchronized int size() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d hits, %d misses, %d cached", hits, misses, entries.size());
+    }
+
+    /** [HELPER METHOD] Caches VALUE, read from the stored object ID having STAMP */
+    private synchronized void put(String id, Object stamp, V value) {
+        long valueWeight = weigher.applyAsLong(value);
+        if (valueWeight > capacity / 8) {
+            return;
+        }
+        Entry<V> previous = entries.put(id, new Entry<>(value, stamp, valueWeight));
+        if (previous != null) {
+            weight -= previous.weight;
+        }
+        weight += valueWeight;
+        Iterator<Map.Entry<String, Entry<V>>> eldest = entries.entrySet().iterator();
+        while (weight > capacity && eldest.hasNext()) {
+            weight -= eldest.next().getValue().weight;
+            eldest.remove();
+        }
+    }
+
+    /** A cached value with the stamp of the object it was read from */
+    private static class Entry<V> {
+        final V value;
+        final Object stamp;
+        final long weight;
+
+        Entry(V value, Object stamp, long weight) {
+            this.value = value;
+            this.stamp = stamp;
+            this.weight = weight;
+        }
+    }
+}
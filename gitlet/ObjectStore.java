@@ -0,0 +1,584 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/** A directory of objects (commits or blobs) named by their id.
+ *
+ *  New objects are written as loose files, sharded by the first two hex digits of their id:
+ *  object <id> is DIR/<id[0..1]>/<id[2..]>, so no directory holds more than a 256th of the
+ *  loose objects. Repositories made by older versions kept every loose object directly in DIR;
+ *  those are still found until shard() moves them into place. repack() moves every loose
+ *  object into a single pack under DIR/packs, after which lookups are a binary search over the
+ *  pack index instead of a directory listing. Loose objects shadow packed ones with the same id.
+ *  Objects larger than PACK_LIMIT always stay loose so they can be streamed.
+ *
+ *  Objects are written to DIR/tmp and renamed into place (see Durability). At the batched
+ *  durability level they stay there, pending, until flush() syncs them and moves them all into
+ *  place; pending objects are read, listed and found like loose ones meanwhile.
+ *  @author procrastin
+ */
+public class ObjectStore {
+
+    /** Largest object moved into a pack */
+    static final long PACK_LIMIT = 16 * 1024 * 1024;
+    /** Size of the buffers used to stream objects */
+    static final int BUFFER_SIZE = 64 * 1024;
+    /** Number of leading hex digits of an id naming its shard directory */
+    private static final int SHARD_LENGTH = 2;
+    /** Temporary files older than this (in ms) were left by a crashed writer */
+    private static final long STALE_TEMP_AGE = 24 * 60 * 60 * 1000;
+
+    /** Directory holding the loose objects */
+    private final File dir;
+    /** Directory holding the packs */
+    private final File packDir;
+    /** Directory holding objects being written */
+    private final File tempDir;
+    /** Objects written but not yet moved into place, by id: the temporary file holding each */
+    private final ConcurrentSkipListMap<String, File> pending = new ConcurrentSkipListMap<>();
+    /** Packs of this store, loaded on first use */
+    private List<PackFile> packs;
+    /** Stamp of the pack directory when the packs were loaded */
+    private Object packsStamp;
+    /** Whether DIR holds unsharded loose objects, checked on first use */
+    private Boolean unsharded;
+
+    public ObjectStore(File dir) {
+        this.dir = dir;
+        this.packDir = Utils.join(dir, "packs");
+        this.tempDir = Utils.join(dir, "tmp");
+    }
+
+    /** Returns true if an object with the given id is stored */
+    public boolean contains(String id) {
+        if (!isValidID(id)) {
+            return false;
+        }
+        if (existingLooseFile(id) != null) {
+            return true;
+        }
+        for (PackFile pack : packs()) {
+            if (pack.contains(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Returns the contents of the object with the given id. Throws IllegalArgumentException
+     *  if there is no such object. */
+    public byte[] read(String id) {
+        if (!isValidID(id)) {
+            throw new IllegalArgumentException("No object with id " + id);
+        }
+        File loose = existingLooseFile(id);
+        if (loose != null) {
+            return Utils.readContents(loose);
+        }
+        for (PackFile pack : packs()) {
+            byte[] contents = pack.read(id);
+            if (contents != null) {
+                return contents;
+            }
+        }
+        throw new IllegalArgumentException("No object with id " + id);
+    }
+
+    /** Returns a value that changes whenever the object with the given id is rewritten: the
+     *  stamp of its loose file, or null if it is packed (packed objects never change) */
+    public Object stamp(String id) {
+        File loose = isValidID(id) ? existingLooseFile(id) : null;
+        return loose == null ? null : Utils.fileStamp(loose);
+    }
+
+    /** Returns the stored length of the object with the given id, or -1 if there is none */
+    public long length(String id) {
+        if (!isValidID(id)) {
+            return -1;
+        }
+        File loose = existingLooseFile(id);
+        if (loose != null) {
+            return loose.length();
+        }
+        for (PackFile pack : packs()) {
+            long length = pack.length(id);
+            if (length >= 0) {
+                return length;
+            }
+        }
+        return -1;
+    }
+
+    /** Returns a stream over the contents of the object with the given id. Loose objects
+     *  are read straight from their file. Throws IllegalArgumentException if there is no
+     *  such object. */
+    public InputStream open(String id) {
+        File loose = isValidID(id) ? existingLooseFile(id) : null;
+        if (loose != null) {
+            try {
+                return new BufferedInputStream(new FileInputStream(loose), BUFFER_SIZE);
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+        }
+        return new ByteArrayInputStream(read(id));
+    }
+
+    /** Writes the bytes of CONTENTS as the object with the given id, replacing any previous
+     *  version. Copies through a fixed-size buffer and closes CONTENTS. */
+    public void write(String id, InputStream contents) {
+        File temp = tempFile(id);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = contents;
+             OutputStream out = new FileOutputStream(temp)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        place(id, temp);
+    }
+
+    /** Writes CONTENTS as the object with the given id, replacing any previous version */
+    public void write(String id, byte[] contents) {
+        File temp = tempFile(id);
+        Utils.writeContents(temp, contents);
+        place(id, temp);
+    }
+
+    /** Syncs the pending objects, all together, then moves them into place and syncs their
+     *  shard directories */
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Map.Entry<String, File>> written = new ArrayList<>(pending.entrySet());
+        // Syncing them at once lets the disk write them back together
+        written.parallelStream().forEach(entry -> Durability.force(entry.getValue()));
+        Set<File> shards = new HashSet<>();
+        for (Map.Entry<String, File> entry : written) {
+            File loose = looseFile(entry.getKey());
+            if (shards.add(loose.getParentFile())) {
+                loose.getParentFile().mkdirs();
+            }
+            Durability.replace(entry.getValue(), loose, false);
+            pending.remove(entry.getKey());
+        }
+        for (File shard : shards) {
+            Durability.force(shard);
+        }
+    }
+
+    /** Returns the ids of all stored objects in lexicographic order */
+    public List<String> ids() {
+        List<String> ids = new ArrayList<>();
+        idIterator().forEachRemaining(ids::add);
+        return ids;
+    }
+
+    /** Returns the ids of all stored objects in lexicographic order, listing one shard
+     *  directory at a time as they are iterated, so only a shard's ids are held at once */
+    public Iterator<String> idIterator() {
+        List<Iterator<String>> sources = new ArrayList<>();
+        sources.add(looseIterator());
+        sources.add(new ArrayList<>(pending.keySet()).iterator());
+        for (PackFile pack : packs()) {
+            sources.add(pack.idIterator());
+        }
+        return new MergedIDs(sources);
+    }
+
+    /**
+     * Returns the ids of stored objects starting with the hex digits PREFIX, in sorted order,
+     * but no more than LIMIT of them. The packs are never listed: their ids are looked up in
+     * the pack indexes. Only the shards PREFIX can be in are listed.
+     */
+    public List<String> idsStartingWith(String prefix, int limit) {
+        TreeSet<String> matches = new TreeSet<>(looseIDs(prefix));
+        matches.addAll(pending.subMap(prefix, prefix + Character.MAX_VALUE).keySet());
+        for (PackFile pack : packs()) {
+            List<String> packed = new ArrayList<>();
+            pack.idsStartingWith(prefix, packed, limit);
+            matches.addAll(packed);
+        }
+        List<String> ids = new ArrayList<>(matches);
+        return ids.size() > limit ? ids.subList(0, limit) : ids;
+    }
+
+    /** Deletes the objects with the given ids. Packs holding any of them are rewritten. */
+    public void delete(Collection<String> deleted) {
+        boolean packed = false;
+        for (String id : deleted) {
+            deleteLoose(id);
+            for (PackFile pack : packs()) {
+                packed = packed || pack.contains(id);
+            }
+        }
+        if (packed) {
+            repack(new TreeSet<>(deleted));
+        }
+    }
+
+    /** Moves every object of this store into one pack and removes the loose files */
+    public void repack() {
+        repack(new TreeSet<>());
+    }
+
+    /**
+     * [HELPER METHOD]
+     * Writes a single pack with every object except DROPPED, then removes the old packs
+     * and loose objects
+     */
+    private void repack(TreeSet<String> dropped) {
+        flush();
+        deleteStaleTemps();
+        List<String> loose = looseIDs();
+        List<PackFile> oldPacks = packs();
+        if (loose.isEmpty() && oldPacks.size() <= 1 && dropped.isEmpty()) {
+            return;
+        }
+
+        TreeMap<String, PackFile.ObjectSource> objects = new TreeMap<>();
+        for (PackFile pack : oldPacks) {
+            for (String id : pack.ids()) {
+                objects.put(id, pack::read);
+            }
+        }
+        List<String> packed = new ArrayList<>();
+        for (String id : loose) {
+            if (existingLooseFile(id).length() <= PACK_LIMIT) {
+                objects.put(id, looseID -> Utils.readContents(existingLooseFile(looseID)));
+                packed.add(id);
+            }
+        }
+        objects.keySet().removeAll(dropped);
+
+        File newIndex = PackFile.write(packDir, objects);
+        for (PackFile pack : oldPacks) {
+            if (!pack.indexFile().equals(newIndex)) {
+                pack.delete();
+            }
+        }
+        for (String id : packed) {
+            deleteLoose(id);
+        }
+        deleteEmptyShards();
+        packs = null;
+    }
+
+    /** Moves the loose objects older versions kept directly in DIR into their shard. Renames
+     *  them in place, so no object is copied. */
+    public void shard() {
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            File unshardedFile = Utils.join(dir, name);
+            if (isValidID(name) && unshardedFile.isFile()) {
+                File loose = looseFile(name);
+                loose.getParentFile().mkdirs();
+                if (loose.isFile()) {
+                    // Already written again since; both copies hold the same object
+                    unshardedFile.delete();
+                } else if (!unshardedFile.renameTo(loose)) {
+                    throw new IllegalArgumentException("could not move " + unshardedFile);
+                }
+            }
+        }
+        unsharded = false;
+    }
+
+    /** Forgets the packs of this store if another process added or removed any since they
+     *  were opened */
+    public void reload() {
+        if (packs != null && !Objects.equals(Utils.fileStamp(packDir), packsStamp)) {
+            packs = null;
+        }
+    }
+
+    /** [HELPER METHOD] Returns the packs of this store, opening them on first use */
+    private List<PackFile> packs() {
+        if (packs == null) {
+            packsStamp = Utils.fileStamp(packDir);
+            packs = new ArrayList<>();
+            String[] names = packDir.list((d, name) -> name.endsWith(".idx"));
+            if (names != null) {
+                for (String name : names) {
+                    packs.add(new PackFile(Utils.join(packDir, name)));
+                }
+            }
+        }
+        return packs;
+    }
+
+    /** [HELPER METHOD] Returns the ids of the loose objects */
+    private List<String> looseIDs() {
+        return looseIDs("");
+    }
+
+    /** [HELPER METHOD] Returns the ids of the loose objects starting with the hex digits
+     *  PREFIX, listing only the shards they can be in */
+    private List<String> looseIDs(String prefix) {
+        List<String> ids = new ArrayList<>();
+        String[] shards;
+        if (prefix.length() >= SHARD_LENGTH) {
+            shards = new String[] {prefix.substring(0, SHARD_LENGTH)};
+        } else {
+            shards = dir.list((d, name) -> name.length() == SHARD_LENGTH && name.startsWith(prefix));
+        }
+        if (shards != null) {
+            for (String shard : shards) {
+                String[] names = Utils.join(dir, shard).list();
+                if (names == null) {
+                    continue;
+                }
+                for (String name : names) {
+                    String id = shard + name;
+                    if (isValidID(id) && id.startsWith(prefix)) {
+                        ids.add(id);
+                    }
+                }
+            }
+        }
+        if (hasUnsharded()) {
+            String[] names = dir.list();
+            for (String name : names) {
+                if (isValidID(name) && name.startsWith(prefix)) {
+                    ids.add(name);
+                }
+            }
+        }
+        return ids;
+    }
+
+    /** [HELPER METHOD] Returns the ids of the loose objects in lexicographic order, listing
+     *  one shard at a time */
+    private Iterator<String> looseIterator() {
+        if (hasUnsharded()) {
+            List<String> ids = looseIDs();
+            Collections.sort(ids);
+            return ids.iterator();
+        }
+        String[] shards = dir.list((d, name) -> name.length() == SHARD_LENGTH);
+        if (shards == null) {
+            return Collections.emptyIterator();
+        }
+        Arrays.sort(shards);
+        return new Iterator<>() {
+            private int next = 0;
+            private Iterator<String> shard = Collections.emptyIterator();
+
+            @Override
+            public boolean hasNext() {
+                while (!shard.hasNext() && next < shards.length) {
+                    List<String> ids = looseIDs(shards[next]);
+                    next += 1;
+                    Collections.sort(ids);
+                    shard = ids.iterator();
+                }
+                return shard.hasNext();
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return shard.next();
+            }
+        };
+    }
+
+    /** [HELPER METHOD] Returns a new temporary file for the object with the given id */
+    private File tempFile(String id) {
+        tempDir.mkdirs();
+        return Durability.tempFile(new File(tempDir, id));
+    }
+
+    /** [HELPER METHOD] Puts TEMP, just written, in place as the object with the given id, or
+     *  leaves it pending at the batched durability level */
+    private void place(String id, File temp) {
+        Durability.Level level = Durability.level();
+        if (level == Durability.Level.BATCHED) {
+            pending.put(id, temp);
+            return;
+        }
+        File loose = looseFile(id);
+        loose.getParentFile().mkdirs();
+        Durability.replace(temp, loose, level == Durability.Level.STRICT);
+    }
+
+    /** [HELPER METHOD] Deletes the temporary files a crashed writer left behind */
+    private void deleteStaleTemps() {
+        File[] temps = tempDir.listFiles();
+        if (temps != null) {
+            long now = System.currentTimeMillis();
+            for (File temp : temps) {
+                if (now - temp.lastModified() > STALE_TEMP_AGE) {
+                    temp.delete();
+                }
+            }
+        }
+    }
+
+    /** [HELPER METHOD] Returns the file holding the loose object with the given id */
+    private File looseFile(String id) {
+        return Utils.join(dir, id.substring(0, SHARD_LENGTH), id.substring(SHARD_LENGTH));
+    }
+
+    /** [HELPER METHOD] Returns the file holding the loose object with the given id, sharded
+     *  or not, or pending, or null if it isn't loose */
+    private File existingLooseFile(String id) {
+        File temp = pending.get(id);
+        if (temp != null) {
+            return temp;
+        }
+        File loose = looseFile(id);
+        if (loose.isFile()) {
+            return loose;
+        }
+        if (hasUnsharded()) {
+            File unshardedFile = Utils.join(dir, id);
+            if (unshardedFile.isFile()) {
+                return unshardedFile;
+            }
+        }
+        return null;
+    }
+
+    /** [HELPER METHOD] Deletes the loose object with the given id, sharded or not */
+    private void deleteLoose(String id) {
+        File temp = pending.remove(id);
+        if (temp != null) {
+            temp.delete();
+        }
+        looseFile(id).delete();
+        if (hasUnsharded()) {
+            Utils.join(dir, id).delete();
+        }
+    }
+
+    /** [HELPER METHOD] Deletes the shard directories left empty */
+    private void deleteEmptyShards() {
+        String[] shards = dir.list((d, name) -> name.length() == SHARD_LENGTH);
+        if (shards != null) {
+            for (String shard : shards) {
+                // Only succeeds if it is empty
+                Utils.join(dir, shard).delete();
+            }
+        }
+    }
+
+    /** [HELPER METHOD] Returns true if DIR holds loose objects of an older version, which
+     *  weren't sharded. Lists DIR (which otherwise holds at most 257 entries) on first use. */
+    private boolean hasUnsharded() {
+        if (unsharded == null) {
+            unsharded = false;
+            String[] names = dir.list();
+            if (names != null) {
+                for (String name : names) {
+                    if (isValidID(name)) {
+                        unsharded = true;
+                        break;
+                    }
+                }
+            }
+        }
+        return unsharded;
+    }
+
+    /** [HELPER METHOD] Returns true if ID looks like an object id (lowercase hex of the full
+     *  length of some hash algorithm) */
+    private static boolean isValidID(String id) {
+        if (id == null || !Hashing.isIDLength(id.length())) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i += 1) {
+            char c = id.charAt(i);
+            if (!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f'))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Merges iterators over sorted ids into one over their union, in sorted order */
+    private static class MergedIDs implements Iterator<String> {
+
+        /** An iterator and the id it returned last, not yet merged */
+        private static class Source {
+            private String head;
+            private final Iterator<String> rest;
+
+            Source(Iterator<String> rest) {
+                this.rest = rest;
+            }
+        }
+
+        /** Sources with ids left, by their next id */
+        private final PriorityQueue<Source> sources =
+                new PriorityQueue<>(Comparator.comparing((Source source) -> source.head));
+        /** Id returned last */
+        private String last;
+
+        MergedIDs(List<Iterator<String>> iterators) {
+            for (Iterator<String> iterator : iterators) {
+                advance(new Source(iterator));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            // An object both loose and packed is returned once
+            while (!sources.isEmpty() && sources.peek().head.equals(last)) {
+                advance(sources.poll());
+            }
+            return !sources.isEmpty();
+        }
+
+        @Override
+        public String next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Source source = sources.poll();
+            last = source.head;
+            advance(source);
+            return last;
+        }
+
+        /** Queues SOURCE with its next id, if it has one */
+        private void advance(Source source) {
+            if (source.rest.hasNext()) {
+                source.head = source.rest.next();
+                sources.add(source);
+            }
+        }
+    }
+}
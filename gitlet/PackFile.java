@@ -0,0 +1,310 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.SortedMap;
+
+/** A pack holds many objects in a single file so a store doesn't need one file per object.
+ *
+ *  pack-NAME.pack: "PACK", version, object count, then every object as <length><bytes>
+ *  pack-NAME.idx:  "PIDX", version, id length, object count, a 256-entry fan-out table
+ *                  (number of ids whose first byte is <= i), the sorted binary ids,
+ *                  then the offset of each object in the .pack file
+ *
+ *  The index is read through a MappedByteBuffer and searched with a binary search, so a
+ *  lookup never lists or reads the whole pack.
+ *  @author procrastin
+ */
+public class PackFile {
+
+    private static final int PACK_MAGIC = 0x5041434b; // "PACK"
+    private static final int IDX_MAGIC = 0x50494458;  // "PIDX"
+    private static final int VERSION = 1;
+    private static final int PACK_HEADER = 12;
+    private static final int IDX_HEADER = 16;
+    private static final int FANOUT_SIZE = 256 * 4;
+
+    /** The .pack file holding the object contents */
+    private final File packFile;
+    /** The .idx file */
+    private final File idxFile;
+    /** The mapped .idx file */
+    private final MappedByteBuffer index;
+    /** Length of a binary id in bytes */
+    private final int idLength;
+    /** Number of objects in this pack */
+    private final int count;
+
+    /** Opens the pack whose index is IDXFILE */
+    public PackFile(File idxFile) {
+        String name = idxFile.getName();
+        this.idxFile = idxFile;
+        this.packFile = new File(idxFile.getParentFile(), name.substring(0, name.length() - 4) + ".pack");
+        try (FileChannel channel = FileChannel.open(idxFile.toPath())) {
+            this.index = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        if (index.getInt(0) != IDX_MAGIC || index.getInt(4) != VERSION) {
+            throw Utils.error("Corrupt pack index %s", name);
+        }
+        this.idLength = index.getInt(8);
+        this.count = index.getInt(12);
+    }
+
+    /** Returns the number of objects in this pack */
+    public int size() {
+        return count;
+    }
+
+    /** Returns true if this pack holds the object with the given hex id */
+    public boolean contains(String id) {
+        return find(id) >= 0;
+    }
+
+    /** Returns the contents of the object with the given hex id, or null if it isn't here */
+    public byte[] read(String id) {
+        int position = find(id);
+        if (position < 0) {
+            return null;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(packFile, "r")) {
+            in.seek(offset(position));
+            byte[] contents = new byte[in.readInt()];
+            in.readFully(contents);
+            return contents;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns the length of the object with the given hex id, or -1 if it isn't here */
+    public long length(String id) {
+        int position = find(id);
+        if (position < 0) {
+            return -1;
+        }
+        try (RandomAccessFile in = new RandomAccessFile(packFile, "r")) {
+            in.seek(offset(position));
+            return in.readInt();
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** Returns all the hex ids in this pack, in sorted order */
+    public List<String> ids() {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i += 1) {
+            ids.add(idAt(i));
+        }
+        return ids;
+    }
+
+    /** Returns the hex ids in this pack, in sorted order, each read as it is reached */
+    public Iterator<String> idIterator() {
+        return new Iterator<>() {
+            private int position = 0;
+
+            @Override
+            public boolean hasNext() {
+                return position < count;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                position += 1;
+                return idAt(position - 1);
+            }
+        };
+    }
+
+    /** Returns the .idx file of this pack */
+    public File indexFile() {
+        return idxFile;
+    }
+
+    /** Deletes the .pack and .idx files of this pack */
+    public void delete() {
+        packFile.delete();
+        idxFile.delete();
+    }
+
+    /**
+     * Adds to MATCHES, in sorted order, the hex ids in this pack starting with the hex digits
+     * PREFIX, stopping once MATCHES holds LIMIT ids. Only the ids sharing the prefix are read:
+     * the fan-out table and a binary search find the first of them.
+     */
+    public void idsStartingWith(String prefix, List<String> matches, int limit) {
+        if (prefix.length() > idLength * 2) {
+            return;
+        }
+        byte[] low = Utils.fromHex(pad(prefix, '0'));
+        byte[] high = Utils.fromHex(pad(prefix, 'f'));
+        if (low == null || high == null) {
+            return;
+        }
+        int position = lowerBound(low, fanout(high[0] & 0xff));
+        for (; position < count && matches.size() < limit; position += 1) {
+            String id = idAt(position);
+            if (!id.startsWith(prefix)) {
+                break;
+            }
+            matches.add(id);
+        }
+    }
+
+    /**
+     * [HELPER METHOD]
+     * Returns the position of the hex ID in the sorted id table, or -1 if it isn't in this pack
+     */
+    private int find(String id) {
+        byte[] key = Utils.fromHex(id);
+        if (key == null || key.length != idLength) {
+            return -1;
+        }
+        int position = lowerBound(key, fanout(key[0] & 0xff));
+        if (position < count && compareId(position, key) == 0) {
+            return position;
+        }
+        return -1;
+    }
+
+    /**
+     * [HELPER METHOD]
+     * Returns the position of the first id at least KEY (a binary id), searching the ids with
+     * the same first byte as KEY, which end before position HI
+     */
+    private int lowerBound(byte[] key, int hi) {
+        int first = key[0] & 0xff;
+        int lo = first == 0 ? 0 : fanout(first - 1);
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (compareId(mid, key) < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /** [HELPER METHOD] Returns the hex PREFIX padded with DIGIT to the length of a full id */
+    private String pad(String prefix, char digit) {
+        StringBuilder padded = new StringBuilder(prefix);
+        while (padded.length() < idLength * 2) {
+            padded.append(digit);
+        }
+        return padded.toString();
+    }
+
+    /** [HELPER METHOD] Number of ids whose first byte is at most B */
+    private int fanout(int b) {
+        return index.getInt(IDX_HEADER + b * 4);
+    }
+
+    /** [HELPER METHOD] Compares the id at POSITION with KEY, unsigned byte by byte */
+    private int compareId(int position, byte[] key) {
+        int start = IDX_HEADER + FANOUT_SIZE + position * idLength;
+        for (int i = 0; i < idLength; i += 1) {
+            int cmp = (index.get(start + i) & 0xff) - (key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** [HELPER METHOD] Returns the hex id at POSITION */
+    private String idAt(int position) {
+        byte[] id = new byte[idLength];
+        index.get(IDX_HEADER + FANOUT_SIZE + position * idLength, id);
+        return Utils.toHex(id);
+    }
+
+    /** [HELPER METHOD] Returns the offset in the .pack file of the object at POSITION */
+    private long offset(int position) {
+        return index.getLong(IDX_HEADER + FANOUT_SIZE + count * idLength + position * 8);
+    }
+
+    /**
+     * Writes a new pack into DIR holding OBJECTS, a map of hex id to object source, and returns
+     * its index file. The pack is written under temporary names and only renamed into place once
+     * complete, so readers never see a partial pack.
+     */
+    public static File write(File dir, SortedMap<String, ObjectSource> objects) {
+        dir.mkdirs();
+        String name = "pack-" + Utils.sha1(new ArrayList<Object>(objects.keySet()));
+        File pack = new File(dir, name + ".pack");
+        File idx = new File(dir, name + ".idx");
+        File tmpPack = Durability.tempFile(pack);
+        File tmpIdx = Durability.tempFile(idx);
+
+        int idLength = objects.isEmpty() ? Utils.UID_LENGTH / 2 : objects.firstKey().length() / 2;
+        long[] offsets = new long[objects.size()];
+        int[] fanout = new int[256];
+        try {
+            // Object contents
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(tmpPack.toPath())))) {
+                out.writeInt(PACK_MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(objects.size());
+                long offset = PACK_HEADER;
+                int i = 0;
+                for (SortedMap.Entry<String, ObjectSource> entry : objects.entrySet()) {
+                    byte[] contents = entry.getValue().read(entry.getKey());
+                    offsets[i] = offset;
+                    out.writeInt(contents.length);
+                    out.write(contents);
+                    offset += 4 + contents.length;
+                    fanout[Integer.parseInt(entry.getKey().substring(0, 2), 16)] += 1;
+                    i += 1;
+                }
+            }
+
+            // Index
+            ByteBuffer buffer = ByteBuffer.allocate(IDX_HEADER + FANOUT_SIZE
+                    + objects.size() * (idLength + 8));
+            buffer.putInt(IDX_MAGIC).putInt(VERSION).putInt(idLength).putInt(objects.size());
+            int total = 0;
+            for (int b = 0; b < 256; b += 1) {
+                total += fanout[b];
+                buffer.putInt(total);
+            }
+            for (String id : objects.keySet()) {
+                buffer.put(Utils.fromHex(id));
+            }
+            for (long offset : offsets) {
+                buffer.putLong(offset);
+            }
+            Files.write(tmpIdx.toPath(), buffer.array());
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        // The loose objects are deleted once the pack is written, so it must not be lost
+        boolean sync = Durability.level() != Durability.Level.NONE;
+        Durability.replace(tmpPack, pack, sync);
+        Durability.replace(tmpIdx, idx, sync);
+        return idx;
+    }
+
+    /** Where the contents of an object come from while a new pack is being written */
+    public interface ObjectSource {
+        byte[] read(String id);
+    }
+}
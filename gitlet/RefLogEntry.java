@@ -0,0 +1,72 @@
+package gitlet;
+
+/** One change of a ref, as shown by reflog.
+ *  @author procrastin
+ */
+public class RefLogEntry {
+
+    private final String ref;
+    private final int index;
+    private final String oldValue;
+    private final String newValue;
+    private final long time;
+    private final String command;
+
+    /** The INDEXth latest change of REF, from OLDVALUE to NEWVALUE (null if none), made at TIME
+     *  (in seconds since the epoch) by COMMAND */
+    RefLogEntry(String ref, int index, String oldValue, String newValue, long time, String command) {
+        this.ref = ref;
+        this.index = index;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+        this.time = time;
+        this.command = command;
+    }
+
+    /** Returns the branch that changed, or "HEAD" if the current branch changed */
+    public String getRef() {
+        return ref;
+    }
+
+    /** Returns how many later changes REF had: 0 for its latest change */
+    public int getIndex() {
+        return index;
+    }
+
+    /** Returns the commit id (the branch name for HEAD) before the change, or null if the
+     *  branch didn't exist */
+    public String getOldValue() {
+        return oldValue;
+    }
+
+    /** Returns the commit id (the branch name for HEAD) after the change, or null if the
+     *  branch was deleted */
+    public String getNewValue() {
+        return newValue;
+    }
+
+    /** Returns the time of the change in seconds since the epoch */
+    public long getTime() {
+        return time;
+    }
+
+    /** Returns what made the change, e.g. "commit: Add a.txt" */
+    public String getCommand() {
+        return command;
+    }
+
+    /** Returns the entry as reflog prints it: the new value (commit ids abbreviated), the ref
+     *  and the command */
+    @Override
+    public String toString() {
+        String value;
+        if (newValue == null) {
+            value = "0000000";
+        } else if (ref.equals("HEAD")) {
+            value = newValue;
+        } else {
+            value = newValue.substring(0, Math.min(7, newValue.length()));
+        }
+        return value + " " + ref + "@{" + index + "}: " + command;
+    }
+}
@@ -0,0 +1,372 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/** The branches and the current branch, kept as a journal of changes and a snapshot.
+ *
+ *  .gitlet/refs.log is only ever appended to: one line per change of a ref, with its fields
+ *  separated by tabs:
+ *      <number> <time> <ref> <old> <new> <command>
+ *  The ref is a branch, whose old and new values are commit ids ("-" when the branch didn't or
+ *  no longer exists), or HEAD, whose values are branch names. The time is in seconds since the
+ *  epoch and the command says what moved the ref (e.g. "commit: Add a.txt"). .gitlet/refs is a
+ *  snapshot of every ref as of change <number>:
+ *      <number> <offset in the journal of the next change>
+ *      HEAD <current branch>
+ *      <commit id> <branch>    (one line per branch)
+ *  Refs are read once per operation, by reading the snapshot and replaying the few changes
+ *  made since: it is rewritten every COMPACT_INTERVAL changes. A partly written last change,
+ *  left by a crash, is ignored. The journal also backs reflog; gc drops changes older than
+ *  EXPIRY from it. Both are only written holding .gitlet/refs.lock (see Durability.locked),
+ *  after taking in the changes other processes made meanwhile.
+ *
+ *  Repositories made by older versions kept the current branch in HEAD.txt and each branch
+ *  in a file of .gitlet/branches; they are moved into a snapshot on first use.
+ *  @author procrastin
+ */
+public class Refs {
+
+    /** Changes appended to the journal before the snapshot is written again */
+    private static final int COMPACT_INTERVAL = 256;
+    /** Age (in seconds) of the changes gc drops from the journal: 90 days */
+    static final long EXPIRY = 90L * 24 * 60 * 60;
+    /** Value of a branch that doesn't exist */
+    private static final String NONE = "-";
+
+    /** The snapshot */
+    private final File snapshotFile;
+    /** The journal */
+    private final File journalFile;
+    /** Lock file held while writing the snapshot or the journal */
+    private final File lockFile;
+    /** The current branch */
+    private String head;
+    /** The head commit of each branch, by name */
+    private final TreeMap<String, String> branches = new TreeMap<>();
+    /** Number of the last change applied */
+    private long number;
+    /** Number of the last change in the snapshot */
+    private long snapshotNumber;
+    /** Length of the journal up to the end of the last complete change read */
+    private long offset;
+    /** Stamp of the journal when it was last read or written */
+    private Object stamp;
+
+    /** [HELPER METHOD] The refs stored in SNAPSHOTFILE and JOURNALFILE, not read yet */
+    private Refs(File snapshotFile, File journalFile) {
+        this.snapshotFile = snapshotFile;
+        this.journalFile = journalFile;
+        this.lockFile = new File(snapshotFile.getPath() + ".lock");
+    }
+
+    /** Returns the refs of the current repository, reading them on first use */
+    static Refs get() {
+        GitletRepository repository = GitletRepository.current();
+        if (repository.refs == null) {
+            Refs refs = new Refs(repository.refsFile, repository.refLogFile);
+            if (!refs.snapshotFile.isFile() && !refs.journalFile.isFile() && repository.headFile.isFile()) {
+                refs.importLegacy(repository.headFile, repository.branchesDir);
+            } else {
+                refs.read();
+            }
+            repository.refs = refs;
+        }
+        return repository.refs;
+    }
+
+    /** Returns true unless another process changed the refs since they were read */
+    boolean isCurrent() {
+        return Objects.equals(Utils.fileStamp(journalFile), stamp);
+    }
+
+    /** Returns the name of the current branch */
+    public String head() {
+        return head;
+    }
+
+    /** Returns the id of the head commit of BRANCH, or null if there is no such branch */
+    public String resolve(String branch) {
+        return branches.get(branch);
+    }
+
+    /** Returns true if there is a branch named BRANCH */
+    public boolean exists(String branch) {
+        return branches.containsKey(branch);
+    }
+
+    /** Returns the names of the branches, in lexicographic order */
+    public List<String> branches() {
+        return new ArrayList<>(branches.keySet());
+    }
+
+    /** Points BRANCH, which is created if needed, at the commit ID, because of COMMAND */
+    public void update(String branch, String id, String command) {
+        record(branch, branches.get(branch), id, command);
+    }
+
+    /** Deletes BRANCH, because of COMMAND */
+    public void delete(String branch, String command) {
+        record(branch, branches.get(branch), null, command);
+    }
+
+    /** Makes BRANCH the current branch, because of COMMAND */
+    public void setHead(String branch, String command) {
+        record("HEAD", head, branch, command);
+    }
+
+    /** Returns the changes in the journal, latest first: all of them if REF is null, or else
+     *  those of REF */
+    public List<RefLogEntry> reflog(String ref) {
+        List<RefLogEntry> entries = new ArrayList<>();
+        Map<String, Integer> counts = new HashMap<>();
+        List<String[]> changes = changes(readJournal(0));
+        Collections.reverse(changes);
+        for (String[] change : changes) {
+            if (ref == null || ref.equals(change[2])) {
+                int index = counts.merge(change[2], 1, Integer::sum) - 1;
+                entries.add(new RefLogEntry(change[2], index, value(change[3]), value(change[4]),
+                        Long.parseLong(change[1]), change[5]));
+            }
+        }
+        return entries;
+    }
+
+    /** Drops the changes made before BEFORE (in seconds since the epoch) from the journal */
+    public void expire(long before) {
+        Durability.locked(lockFile, () -> {
+            refresh();
+            compact();
+            StringBuilder kept = new StringBuilder();
+            for (String[] change : changes(readJournal(0))) {
+                if (Long.parseLong(change[1]) >= before) {
+                    kept.append(String.join("\t", change)).append('\n');
+                }
+            }
+            File temp = Durability.tempFile(journalFile);
+            Utils.writeContents(temp, kept.toString());
+            Durability.replace(temp, journalFile, Durability.level() != Durability.Level.NONE);
+            offset = journalFile.length();
+            stamp = Utils.fileStamp(journalFile);
+            // The snapshot must point at the end of the new journal
+            compact();
+            return null;
+        });
+    }
+
+    /**
+     * [HELPER METHOD]
+     * Appends the change of REF from OLDVALUE to NEWVALUE (null if none) because of COMMAND to
+     * the journal, once every object written so far is in place, and applies it
+     */
+    private void record(String ref, String oldValue, String newValue, String command) {
+        Durability.barrier();
+        Durability.locked(lockFile, () -> {
+            refresh();
+            String[] change = {Long.toString(number + 1), Long.toString(System.currentTimeMillis() / 1000),
+                ref, oldValue == null ? NONE : oldValue, newValue == null ? NONE : newValue,
+                command.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ')};
+            String line = String.join("\t", change) + "\n";
+            boolean created = !journalFile.exists();
+            if (journalFile.length() > offset) {
+                // Ends the partly written change left by a crash
+                line = "\n" + line;
+            }
+            byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+            try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                channel.write(ByteBuffer.wrap(bytes));
+                if (Durability.level() != Durability.Level.NONE) {
+                    channel.force(true);
+                }
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            if (created && Durability.level() != Durability.Level.NONE) {
+                Durability.force(journalFile.getParentFile());
+            }
+            offset = journalFile.length();
+            stamp = Utils.fileStamp(journalFile);
+            apply(change);
+            if (number - snapshotNumber >= COMPACT_INTERVAL) {
+                compact();
+            }
+            return null;
+        });
+    }
+
+    /** [HELPER METHOD] Reads the refs again if another process changed them since they were
+     *  read. The journal may have been expired meanwhile, so they are read from the start. */
+    private void refresh() {
+        if (!isCurrent()) {
+            head = null;
+            branches.clear();
+            number = 0;
+            snapshotNumber = 0;
+            offset = 0;
+            read();
+        }
+    }
+
+    /** [HELPER METHOD] Writes the snapshot of the refs as of the last change */
+    private void compact() {
+        StringBuilder snapshot = new StringBuilder();
+        snapshot.append(number).append('\t').append(offset).append('\n');
+        if (head != null) {
+            snapshot.append("HEAD\t").append(head).append('\n');
+        }
+        for (Map.Entry<String, String> branch : branches.entrySet()) {
+            snapshot.append(branch.getValue()).append('\t').append(branch.getKey()).append('\n');
+        }
+        Durability.writeRef(snapshotFile, snapshot.toString());
+        snapshotNumber = number;
+    }
+
+    /** [HELPER METHOD] Reads the snapshot, then the changes of the journal made since */
+    private void read() {
+        long hint = 0;
+        if (snapshotFile.isFile()) {
+            String[] lines = Utils.readContentsAsString(snapshotFile).split("\n");
+            String[] header = lines[0].split("\t");
+            snapshotNumber = Long.parseLong(header[0]);
+            number = snapshotNumber;
+            hint = Long.parseLong(header[1]);
+            for (int i = 1; i < lines.length; i += 1) {
+                String[] fields = lines[i].split("\t", 2);
+                if (fields[0].equals("HEAD")) {
+                    head = fields[1];
+                } else {
+                    branches.put(fields[1], fields[0]);
+                }
+            }
+        }
+        stamp = Utils.fileStamp(journalFile);
+        byte[] tail = readJournal(hint);
+        List<String[]> changes = changes(tail);
+        if (hint > 0 && (hint > journalFile.length()
+                || !changes.isEmpty() && Long.parseLong(changes.get(0)[0]) != number + 1)) {
+            // The journal was rewritten since the snapshot; find the changes from its start
+            offset = 0;
+            replay(readJournal(0));
+        } else {
+            offset = hint;
+            replay(tail);
+        }
+    }
+
+    /** [HELPER METHOD] Applies the changes, read from the journal at offset, in BYTES that
+     *  come after the last change applied */
+    private void replay(byte[] bytes) {
+        int end = lastLineEnd(bytes);
+        for (String[] change : changes(bytes)) {
+            if (Long.parseLong(change[0]) > number) {
+                apply(change);
+            }
+        }
+        offset += end;
+        stamp = Utils.fileStamp(journalFile);
+    }
+
+    /** [HELPER METHOD] Applies CHANGE, a line of the journal split into its fields */
+    private void apply(String[] change) {
+        number = Long.parseLong(change[0]);
+        String value = value(change[4]);
+        if (change[2].equals("HEAD")) {
+            head = value;
+        } else if (value == null) {
+            branches.remove(change[2]);
+        } else {
+            branches.put(change[2], value);
+        }
+    }
+
+    /** [HELPER METHOD] Moves the refs kept in HEADFILE and BRANCHESDIR by older versions into
+     *  a snapshot */
+    private void importLegacy(File headFile, File branchesDir) {
+        head = Utils.readContentsAsString(headFile);
+        List<String> names = Utils.plainFilenamesIn(branchesDir);
+        if (names != null) {
+            for (String name : names) {
+                branches.put(name, Utils.readContentsAsString(Utils.join(branchesDir, name)));
+            }
+        }
+        compact();
+        headFile.delete();
+        for (String name : branches.keySet()) {
+            Utils.join(branchesDir, name).delete();
+        }
+        branchesDir.delete();
+    }
+
+    /** [HELPER METHOD] Returns the journal from byte START on, or nothing if there is none */
+    private byte[] readJournal(long start) {
+        if (!journalFile.isFile()) {
+            return new byte[0];
+        }
+        try (RandomAccessFile in = new RandomAccessFile(journalFile, "r")) {
+            long length = in.length();
+            if (start >= length) {
+                return new byte[0];
+            }
+            byte[] bytes = new byte[(int) (length - start)];
+            in.seek(start);
+            in.readFully(bytes);
+            return bytes;
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** [HELPER METHOD] Returns the complete, well-formed changes in BYTES, split into their
+     *  fields */
+    private static List<String[]> changes(byte[] bytes) {
+        List<String[]> changes = new ArrayList<>();
+        String text = new String(bytes, 0, lastLineEnd(bytes), StandardCharsets.UTF_8);
+        for (String line : text.split("\n")) {
+            String[] fields = line.split("\t", 6);
+            if (fields.length == 6 && isNumber(fields[0]) && isNumber(fields[1])) {
+                changes.add(fields);
+            }
+        }
+        return changes;
+    }
+
+    /** [HELPER METHOD] Returns the length of BYTES up to the end of its last complete line */
+    private static int lastLineEnd(byte[] bytes) {
+        int end = bytes.length;
+        while (end > 0 && bytes[end - 1] != '\n') {
+            end -= 1;
+        }
+        return end;
+    }
+
+    /** [HELPER METHOD] Returns true if TEXT is a non-negative decimal number */
+    private static boolean isNumber(String text) {
+        if (text.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < text.length(); i += 1) {
+            if (!Character.isDigit(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** [HELPER METHOD] Returns the value VALUE of the journal stands for: null for "-" */
+    private static String value(String value) {
+        return value.equals(NONE) ? null : value;
+    }
+}
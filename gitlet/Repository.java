@@ -1,11 +1,22 @@
 package gitlet;
 
 import java.io.File;
-import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import static gitlet.Utils.*;
 
@@ -16,89 +27,198 @@ import static gitlet.Utils.*;
  */
 public class Repository {
 
+    /** Commits decoded ahead by global-log, per thread */
+    private static final int LOG_WINDOW = 16;
+
+    /* The files of the repository bound to the running thread (see GitletRepository) */
+
     /** The current working directory. */
-    public static final File CWD = new File(System.getProperty("user.dir"));
+    public static File cwd() {
+        return GitletRepository.current().root;
+    }
+
     /** The .gitlet directory. */
-    public static final File GITLET_DIR = join(CWD, ".gitlet");
+    public static File gitletDir() {
+        return GitletRepository.current().gitletDir;
+    }
+
     /** Subdirectory for commits */
-    public static final File COMMITS = join(GITLET_DIR, "commits");
+    public static File commitsDir() {
+        return GitletRepository.current().commitsDir;
+    }
+
     /** Subdirectory for blobs */
-    public static final File BLOBS = join(GITLET_DIR, "blobs");
-    /** Subdirectory for branches */
-    public static final File BRANCHES = join(GITLET_DIR, "branches");
-    /** HEAD file */
-    public static final File HEAD = join(GITLET_DIR, "HEAD.txt");
-    /** master file */
-    public static final File MASTER = join(BRANCHES, "master");
+    public static File blobsDir() {
+        return GitletRepository.current().blobsDir;
+    }
+
+    /** Commit graph file */
+    public static File commitGraphFile() {
+        return GitletRepository.current().commitGraphFile;
+    }
+
+    /** Subdirectory for trees */
+    public static File treesDir() {
+        return GitletRepository.current().treesDir;
+    }
+
+    /** Settings file */
+    public static File configFile() {
+        return GitletRepository.current().configFile;
+    }
+
+    /** File holding the layout version of the repository */
+    public static File formatFile() {
+        return GitletRepository.current().formatFile;
+    }
+
+    /** INDEX file */
+    public static File indexFile() {
+        return GitletRepository.current().indexFile;
+    }
+
+    /** Directory of the message index */
+    public static File messagesDir() {
+        return GitletRepository.current().messagesDir;
+    }
+
+    /** Store holding the commits */
+    public static ObjectStore commitStore() {
+        return GitletRepository.current().commitStore;
+    }
+
+    /** Store holding the blobs */
+    public static ObjectStore blobStore() {
+        return GitletRepository.current().blobStore;
+    }
+
+    /** Store holding the trees */
+    public static ObjectStore treeStore() {
+        return GitletRepository.current().treeStore;
+    }
 
 
     /**
-     * Performs the init function
+     * Performs the init function, making object ids with FORMAT
      */
-    public static void init() {
+    public static void init(Hashing.Algorithm format) {
         // Failure case
-        if (GITLET_DIR.exists()) {
-            System.out.println("A Gitlet version-control system already exists in the current directory.");
+        if (gitletDir().exists()) {
+            throw error("A Gitlet version-control system already exists in the current directory.");
         }
 
         // Making initial directories and files
-        GITLET_DIR.mkdir(); COMMITS.mkdir(); BLOBS.mkdir(); BRANCHES.mkdir();
+        gitletDir().mkdir(); commitsDir().mkdir(); blobsDir().mkdir(); treesDir().mkdir();
+
+        // Object format, which must be set before the first object is hashed
+        if (format != Hashing.Algorithm.SHA1) {
+            writeContents(configFile(), "core.objectFormat = " + format.settingName() + "\n");
+            GitletRepository.current().settings = null;
+        }
 
         // Initial commit file
         Commit initialCommit = new Commit();
         initialCommit.saveCommit();
+        MessageIndex.add(initialCommit.hash(), initialCommit.getMessage());
 
-        //HEAD file with path to current branch
-        try {
-            HEAD.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        Utils.writeContents(HEAD, "master");
-
-        //MASTER file with initial commit id
-        try {
-            MASTER.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        Utils.writeContents(MASTER, initialCommit.hash());
+        // Current branch, then master at the initial commit
+        Refs refs = Refs.get();
+        refs.setHead("master", "init");
+        refs.update("master", initialCommit.hash(), "commit (initial): " + initialCommit.getMessage());
 
         Stage setStage = new Stage();
         Stage.createIndex(setStage);
+        Durability.writeRef(formatFile(), GitletRepository.FORMAT + "\n");
     }
 
     /**
-     * Performs the global-log function
+     * Performs the global-log function: passes ACTION every commit made between SINCE and UNTIL
+     * (in seconds since the epoch), in order of id, stopping after MAXCOUNT of them.
+     * Commits are read and decoded ahead by a pool of threads (log.parallelism of them), at
+     * most LOG_WINDOW per thread, while ACTION runs on the calling thread; ids are listed one
+     * shard at a time. So the first commits reach ACTION at once and memory doesn't grow with
+     * the number of commits.
      */
-    public static void globalLog() {
-        List<String> cwdFiles = Utils.plainFilenamesIn(COMMITS);
-        for (String commitID: cwdFiles) {
-            Commit commit = Commit.returnCommit(commitID);
-            System.out.println(commit.toString());
+    public static void globalLog(int maxCount, long since, long until, Consumer<LogEntry> action) {
+        ObjectStore store = commitStore();
+        Iterator<String> ids = store.idIterator();
+        int threads = Math.max(1, Config.getInt("log.parallelism", Runtime.getRuntime().availableProcessors()));
+        if (threads == 1) {
+            for (int count = 0; count < maxCount && ids.hasNext(); ) {
+                LogEntry entry = logEntry(store, ids.next(), since, until);
+                if (entry != null) {
+                    action.accept(entry);
+                    count += 1;
+                }
+            }
+            return;
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(task, "gitlet-log");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Deque<Future<LogEntry>> window = new ArrayDeque<>();
+        try {
+            int count = 0;
+            while (count < maxCount && (ids.hasNext() || !window.isEmpty())) {
+                // Keep the window full, then hand over the oldest commit
+                while (window.size() < threads * LOG_WINDOW && ids.hasNext()) {
+                    String id = ids.next();
+                    window.add(pool.submit(() -> logEntry(store, id, since, until)));
+                }
+                LogEntry entry = window.poll().get();
+                if (entry != null) {
+                    action.accept(entry);
+                    count += 1;
+                }
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw new IllegalArgumentException(excp.getMessage());
+        } catch (ExecutionException excp) {
+            if (excp.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) excp.getCause();
+            }
+            throw new IllegalArgumentException(excp.getCause());
+        } finally {
+            pool.shutdownNow();
         }
     }
 
+    /** [HELPER METHOD] Returns the log entry of the commit ID in STORE, or null if it wasn't
+     *  made between SINCE and UNTIL (in seconds since the epoch) */
+    private static LogEntry logEntry(ObjectStore store, String id, long since, long until) {
+        Commit commit = Commit.decode(store.read(id));
+        if (since != Long.MIN_VALUE || until != Long.MAX_VALUE) {
+            long time = commit.getTime();
+            if (time < since || time > until) {
+                return null;
+            }
+        }
+        return new LogEntry(commit);
+    }
+
     /**
      * Performs the find function
      */
-    public static void find(String message) {
-        // Adding all commit filenames into a list
-        List<String> cwdFiles = Utils.plainFilenamesIn(COMMITS);
-        boolean found = false;
-
-        // Iterating over commits folder
-        for (String commitID: cwdFiles) {
-            Commit commit = Commit.returnCommit(commitID);
-            if (commit.getMessage().equals(message)) {
-                System.out.println(commit.hash());
-                found = true;
-            }
-        }
+    public static List<String> find(String message) {
+        return MessageIndex.find(message);
+    }
 
-        if (!found) {
-            System.out.println("Found no commit with that message.");
+    /**
+     * Performs the find --regex function
+     */
+    public static List<String> findMatching(String regex) {
+        Pattern pattern;
+        try {
+            pattern = Pattern.compile(regex);
+        } catch (PatternSyntaxException excp) {
+            // Invalid pattern [FAILURE CASE]
+            throw error("Invalid regular expression: %s", excp.getDescription());
         }
+        return MessageIndex.findMatching(pattern);
     }
 
     /**
@@ -106,23 +226,14 @@ public class Repository {
      */
     public static void newBranch(String branchName) {
         // Branch with name already exists [FAILURE CASE]
-        List<String> branches = Utils.plainFilenamesIn(BRANCHES);
-        if (branches.contains(branchName)) {
-            System.out.println("A branch with that name already exists.");
-            return;
-        }
-
-        //new BRANCH file
-        File BRANCH = Utils.join(BRANCHES, branchName);
-        try {
-            BRANCH.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
+        // HEAD names the current branch in the ref journal
+        if (Refs.get().exists(branchName) || branchName.equals("HEAD")) {
+            throw error("A branch with that name already exists.");
         }
 
-        // Write in pointer to current commit
+        // Point the new branch at the current commit
         String currentCommitID = CommitTree.currentCommit();
-        Utils.writeContents(BRANCH, currentCommitID);
+        Refs.get().update(branchName, currentCommitID, "branch: Created from " + CommitTree.currentBranch());
     }
 
     /**
@@ -130,22 +241,18 @@ public class Repository {
      */
     public static void rmBranch(String branchName) {
         // Removing non-existent branch [FAILURE CASE]
-        List<String> branches = Utils.plainFilenamesIn(BRANCHES);
-        if (!branches.contains(branchName)) {
-            System.out.println("A branch with that name does not exist.");
-            return;
+        if (!Refs.get().exists(branchName)) {
+            throw error("A branch with that name does not exist.");
         }
 
         // Removing current branch [FAILURE CASE]
-        String currentBranch = Utils.readContentsAsString(HEAD);
+        String currentBranch = CommitTree.currentBranch();
         if (currentBranch.equals(branchName)) {
-            System.out.println("Cannot remove the current branch.");
-            return;
+            throw error("Cannot remove the current branch.");
         }
 
-        // Delete branch file from branch folder
-        File removedBranch = Utils.join(BRANCHES, branchName);
-        removedBranch.delete();
+        // Delete the branch
+        Refs.get().delete(branchName, "rm-branch: deleted");
 
     }
 
@@ -154,99 +261,165 @@ public class Repository {
      */
     public static void checkoutBranch(String branch, Stage index) {
         // Checking out non-existent branch [FAILURE CASE]
-        List<String> branches = Utils.plainFilenamesIn(BRANCHES);
-        if (!branches.contains(branch)) {
-            System.out.println("No such branch exists.");
-            return;
+        if (!Refs.get().exists(branch)) {
+            throw error("No such branch exists.");
         }
 
         // Checking out current branch [FAILURE CASE]
         String currentBranch = CommitTree.currentBranch();
         if (currentBranch.equals(branch)) {
-            System.out.println("No need to checkout the current branch.");
-            return;
+            throw error("No need to checkout the current branch.");
         }
 
-        // A CWD file is untracked and is about to be overwritten by checkout [FAILURE CASE]
-        List<String> cwdFiles = Utils.plainFilenamesIn(CWD);
+        // A cwd() file is untracked and is about to be overwritten by checkout [FAILURE CASE]
+        List<String> cwdFiles = WorkingTree.files();
         List<String> untrackedFiles = index.getUntrackedFiles();
         for (String file: cwdFiles) {
             if (untrackedFiles.contains(file)) {
-                System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                return;
+                throw error("There is an untracked file in the way; delete it, or add and commit it first.");
             }
         }
 
         // Get commit at the head of the given branch
-        File branchFile = Utils.join(Repository.BRANCHES, branch);
-        String headCommitID = Utils.readContentsAsString(branchFile);
+        String headCommitID = Refs.get().resolve(branch);
         Commit headCommitAtBranch = Commit.returnCommit(headCommitID);
 
-        // Put every tracked file in CWD
+        // Put every tracked file in cwd()
         Set<String> trackedFiles = headCommitAtBranch.getFiles().keySet();
         for (String file: trackedFiles) {
             headCommitAtBranch.putFileInCWD(file);
         }
 
-        // Change HEAD pointer to checked out branch
-        Utils.writeContents(Repository.HEAD, branch);
+        // Make the checked out branch the current one
+        Refs.get().setHead(branch, "checkout: moving from " + currentBranch + " to " + branch);
 
         // Delete previously tracked files that aren't tracked in the checked out branch
         List<String> previouslyTrackedFiles = index.getUntrackedFiles();
         for (String file: previouslyTrackedFiles) {
-            File fileToDelete = Utils.join(CWD, file);
-            fileToDelete.delete();
+            WorkingTree.delete(file);
         }
 
         // Clear staging area
         index.clearStagingArea();
-        index.untrackedFiles.clear();
 
     }
 
     /**
      * Performs the reset function
      */
-    public static void reset(String commitID, Stage index) {
-        // Non-existent commit [FAILURE CASE]
-        List<String> commits = Utils.plainFilenamesIn(Repository.COMMITS);
-        if (!commits.contains(commitID)) {
-            System.out.println("No commit with that id exists.");
-            return;
-        }
+    public static void reset(String abbreviatedID, Stage index) {
+        // Non-existent or ambiguous commit [FAILURE CASE]
+        String commitID = Commit.resolveID(abbreviatedID);
 
-        // A CWD file is untracked and is about to be overwritten by checkout [FAILURE CASE]
-        List<String> cwdFiles = Utils.plainFilenamesIn(Repository.CWD);
+        // A cwd() file is untracked and is about to be overwritten by checkout [FAILURE CASE]
+        List<String> cwdFiles = WorkingTree.files();
         List<String> untrackedFiles = index.getUntrackedFiles();
         for (String file: cwdFiles) {
             if (untrackedFiles.contains(file)) {
-                System.out.println("There is an untracked file in the way; delete it, or add and commit it first.");
-                return;
+                throw error("There is an untracked file in the way; delete it, or add and commit it first.");
             }
         }
 
         Commit commitAtGivenID = Commit.returnCommit(commitID);
-        // Put every tracked file in CWD
+        // Put every tracked file in cwd()
         Set<String> trackedFiles = commitAtGivenID.getFiles().keySet();
         for (String file: trackedFiles) {
             commitAtGivenID.putFileInCWD(file);
         }
 
-        // Change HEAD to given ID
-        CommitTree.updateCurrentHead(commitID);
+        // Point the current branch at the given commit
+        CommitTree.updateCurrentHead(commitID, "reset: moving to " + abbreviatedID);
 
         // Delete previously tracked files that aren't tracked in the checked out branch
         List<String> previouslyTrackedFiles = index.getUntrackedFiles();
         for (String file: previouslyTrackedFiles) {
-            File fileToDelete = Utils.join(CWD, file);
-            fileToDelete.delete();
+            WorkingTree.delete(file);
         }
 
         // Clear staging area
         index.clearStagingArea();
-        index.untrackedFiles.clear();
 
     }
 
+    /**
+     * Performs the migrate function.
+     * Older repositories kept every loose object in one directory per store; this moves them
+     * into their shard directories. They also named blobs after their filename and contents;
+     * this re-keys every blob by its contents alone, merges duplicates and rewrites the
+     * commits and the staging area to point at the new ids. Running it on an up-to-date
+     * repository changes nothing. Repositories without a format file are migrated before
+     * their first command.
+     */
+    public static void migrate(Stage index) {
+        // Shard loose objects
+        commitStore().shard();
+        treeStore().shard();
+        blobStore().shard();
+
+        // Re-key every blob by its contents
+        Map<String, String> renamedBlobs = new HashMap<>();
+        for (String oldID: blobStore().ids()) {
+            Blob blob = new Blob(Blob.returnBlobBytes(oldID));
+            if (!blob.hash().equals(oldID)) {
+                blob.saveBlob();
+                renamedBlobs.put(oldID, blob.hash());
+            }
+        }
+        if (renamedBlobs.isEmpty()) {
+            return;
+        }
+
+        // Point commits at the new blob ids
+        for (String commitID: commitStore().ids()) {
+            Commit commit = Commit.returnCommit(commitID);
+            Map<String, String> files = new TreeMap<>(commit.getFiles());
+            if (renameBlobs(files, renamedBlobs)) {
+                commit.setFiles(files);
+                commit.saveCommit();
+            }
+        }
+
+        // Point staged files at the new blob ids
+        if (renameBlobs(index.additionStage, renamedBlobs)) {
+            index.markDirty();
+        }
+
+        // Blobs stored as deltas against old blobs must not lose their base
+        for (String blobID: blobStore().ids()) {
+            if (!renamedBlobs.containsKey(blobID) && renamedBlobs.containsKey(Blob.deltaBase(blobID))) {
+                Blob.storeWhole(blobID);
+            }
+        }
+
+        // Old blobs are no longer referenced
+        blobStore().delete(renamedBlobs.keySet());
+    }
+
+    /**
+     * Performs the gc function: moves all loose commits, trees and blobs into packs
+     */
+    public static void gc() {
+        Refs.get().expire(System.currentTimeMillis() / 1000 - Refs.EXPIRY);
+        commitStore().repack();
+        treeStore().repack();
+        blobStore().repack();
+    }
+
+    /**
+     * [HELPER METHOD]
+     * Replaces the blob ids of FILES according to RENAMEDBLOBS, returns true if any changed
+     */
+    private static boolean renameBlobs(Map<String, String> files, Map<String, String> renamedBlobs) {
+        boolean changed = false;
+        for (Map.Entry<String, String> entry : files.entrySet()) {
+            String newID = renamedBlobs.get(entry.getValue());
+            if (newID != null) {
+                entry.setValue(newID);
+                changed = true;
+            }
+        }
+        return changed;
+    }
+
 
 }
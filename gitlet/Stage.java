@@ -3,46 +3,211 @@ package gitlet;
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 
 import static gitlet.Utils.join;
 
+/** The staging area, together with cached stat data of the working files.
+ *
+ *  INDEX holds a header ("GIDX", version, number of entries) followed by one entry per path,
+ *  sorted by path:
+ *      <path> <flags> [<staged blob id>] [<size> <mtime> <inode> <hashed at> <blob id>]
+ *  A path is stored as the length of the (UTF-8) prefix it shares with the previous path and
+ *  the rest of it, which makes paths in the same directory cost little more than their names.
+ *  The flags say whether the path is staged for addition (and so has a staged blob id),
+ *  staged for removal, and has stat data. A SHA-1 of everything before it ends the file.
+ *  The index is only written back when a command changed it. Index files of older versions,
+ *  which were a serialized Stage, are still read and are rewritten in this format the next
+ *  time they change.
+ */
 public class Stage implements Serializable {
 
-    /** INDEX file that contains serialized staging area object*/
-    static final File INDEX = join(Repository.GITLET_DIR, "INDEX.txt");
+    /** Fixed so index files written before fields were added still deserialize */
+    private static final long serialVersionUID = 5280430212484470233L;
+    /** A file modified this close (in ms) to when it was hashed may change again without its
+     *  size or mtime changing, so its cached hash isn't trusted */
+    private static final long RACY_WINDOW = 2000;
+    private static final int MAGIC = 0x47494458; // "GIDX"
+    private static final int VERSION = 1;
+    private static final int STAGED = 1;
+    private static final int REMOVED = 2;
+    private static final int HAS_STAT = 4;
+    private static final int CHECKSUM_LENGTH = 20;
+
     /** addition staging area*/
     public TreeMap<String, String> additionStage = new TreeMap<>();
     /** removal staging area*/
     public ArrayList<String> removalStage = new ArrayList<>();
-    /** all files in CWD that were never staged/committed*/
-    public ArrayList<String> untrackedFiles = new ArrayList<>();
+    /** stat data and content hash of working files, so unchanged files aren't hashed again */
+    private Map<String, StatEntry> statCache = new HashMap<>();
+    /** true if this changed since it was read from INDEX */
+    private transient boolean dirty;
 
     public Stage() {
     }
 
     /**
      * createIndex(): initializes index file, only used when init is called
-     * saveIndex(): serializes index file after modifications
-     * returnIndex(): deserializes index file and returns it as a Stage object
+     * saveIndex(): writes index file if it was modified
+     * returnIndex(): reads index file and returns it as a Stage object
      * */
     public static void createIndex(Stage stage) {
-        try {
-            Stage.INDEX.createNewFile();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        Utils.writeObject(INDEX, stage);
+        write(stage, Repository.indexFile());
     }
 
     public static void saveIndex(Stage stage) {
-        File indexFile = INDEX;
-        Utils.writeObject(indexFile, stage);
+        if (stage.dirty) {
+            GitletRepository repository = GitletRepository.current();
+            write(stage, repository.indexFile);
+            stage.dirty = false;
+            repository.index = stage;
+            repository.indexStamp = Utils.fileStamp(repository.indexFile);
+        }
     }
 
+    /** Returns the index of the repository; the one read last is reused while INDEX is
+     *  unchanged */
     public static Stage returnIndex() {
-        File inFile = INDEX;
-        return Utils.readObject(inFile, Stage.class);
+        GitletRepository repository = GitletRepository.current();
+        Object stamp = Utils.fileStamp(repository.indexFile);
+        if (repository.index == null || stamp == null || !stamp.equals(repository.indexStamp)) {
+            repository.index = read(repository.indexFile);
+            repository.indexStamp = stamp;
+        }
+        return repository.index;
+    }
+
+    /** Drops the index kept by returnIndex, e.g. after a command failed half way through
+     *  changing it, so the next command reads INDEX again */
+    static void forgetIndex() {
+        GitletRepository repository = GitletRepository.current();
+        repository.index = null;
+        repository.indexStamp = null;
+    }
+
+    /** Writes STAGE to FILE in the current index format. The file is replaced at once, so
+     *  an interrupted write leaves the previous index in place. */
+    static void write(Stage stage, File file) {
+        // Every path with staged changes or stat data, in order
+        Set<String> removed = new HashSet<>(stage.removalStage);
+        List<String> paths = new ArrayList<>(stage.statCache.keySet());
+        for (String path : stage.additionStage.keySet()) {
+            if (!stage.statCache.containsKey(path)) {
+                paths.add(path);
+            }
+        }
+        for (String path : removed) {
+            if (!stage.statCache.containsKey(path) && !stage.additionStage.containsKey(path)) {
+                paths.add(path);
+            }
+        }
+        Collections.sort(paths);
+
+        File temp = Durability.tempFile(file);
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             Hashing.Hasher md = Hashing.start(Hashing.Algorithm.SHA1)) {
+            ByteBuffer out = ByteBuffer.allocate(ObjectStore.BUFFER_SIZE);
+            out.putInt(MAGIC).putInt(VERSION).putInt(paths.size());
+            byte[] previous = new byte[0];
+            for (String path : paths) {
+                String staged = stage.additionStage.get(path);
+                StatEntry stat = stage.statCache.get(path);
+                int flags = (staged != null ? STAGED : 0)
+                        | (removed.contains(path) ? REMOVED : 0)
+                        | (stat != null ? HAS_STAT : 0);
+                byte[] name = path.getBytes(StandardCharsets.UTF_8);
+                int common = commonPrefix(previous, name);
+                int suffixLength = name.length - common;
+                byte[] stagedID = staged == null ? null : Utils.fromHex(staged);
+                byte[] statID = stat == null ? null : Utils.fromHex(stat.hash);
+                int size = 5 + suffixLength + (stagedID == null ? 0 : 1 + stagedID.length)
+                        + (statID == null ? 0 : 33 + statID.length);
+                if (out.remaining() < size) {
+                    flush(channel, md, out);
+                    if (out.capacity() < size) {
+                        out = ByteBuffer.allocate(size);
+                    }
+                }
+
+                out.putShort((short) common).putShort((short) suffixLength).put(name, common, suffixLength);
+                out.put((byte) flags);
+                if (stagedID != null) {
+                    out.put((byte) stagedID.length).put(stagedID);
+                }
+                if (stat != null) {
+                    out.putLong(stat.size).putLong(stat.mtime).putLong(stat.inode).putLong(stat.hashedAt);
+                    out.put((byte) statID.length).put(statID);
+                }
+                previous = name;
+            }
+            flush(channel, md, out);
+            channel.write(ByteBuffer.wrap(md.digest()));
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        // The staged blobs must be in place before an index naming them
+        Durability.barrier();
+        Durability.replace(temp, file, Durability.level() != Durability.Level.NONE);
+    }
+
+    /** Returns the Stage stored in FILE, in the current or the serialized format */
+    static Stage read(File file) {
+        byte[] bytes = Utils.readContents(file);
+        if (bytes.length >= 2 && (bytes[0] & 0xFF) == 0xAC && (bytes[1] & 0xFF) == 0xED) {
+            Stage legacy = Utils.deserialize(bytes, Stage.class);
+            if (legacy.statCache == null) {
+                legacy.statCache = new HashMap<>();
+            }
+            return legacy;
+        }
+
+        int length = bytes.length - CHECKSUM_LENGTH;
+        byte[] checksum = Hashing.start(Hashing.Algorithm.SHA1).update(bytes, 0, Math.max(length, 0)).digest();
+        if (length < 12 || !Arrays.equals(checksum, Arrays.copyOfRange(bytes, length, bytes.length))) {
+            throw Utils.error("Corrupt index");
+        }
+        ByteBuffer in = ByteBuffer.wrap(bytes, 0, length);
+        if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+            throw Utils.error("Corrupt index");
+        }
+        Stage stage = new Stage();
+        int count = in.getInt();
+        stage.statCache = new HashMap<>(count * 4 / 3 + 1);
+        byte[] name = new byte[256];
+        for (int i = 0; i < count; i += 1) {
+            int common = Short.toUnsignedInt(in.getShort());
+            int suffixLength = Short.toUnsignedInt(in.getShort());
+            if (name.length < common + suffixLength) {
+                name = Arrays.copyOf(name, common + suffixLength);
+            }
+            in.get(name, common, suffixLength);
+            String path = new String(name, 0, common + suffixLength, StandardCharsets.UTF_8);
+            int flags = in.get();
+            if ((flags & STAGED) != 0) {
+                stage.additionStage.put(path, readID(in));
+            }
+            if ((flags & REMOVED) != 0) {
+                stage.removalStage.add(path);
+            }
+            if ((flags & HAS_STAT) != 0) {
+                StatEntry stat = new StatEntry();
+                stat.size = in.getLong();
+                stat.mtime = in.getLong();
+                stat.inode = in.getLong();
+                stat.hashedAt = in.getLong();
+                stat.hash = readID(in);
+                stage.statCache.put(path, stat);
+            }
+        }
+        return stage;
     }
 
 
@@ -51,35 +216,38 @@ public class Stage implements Serializable {
      */
     public void add(String filename) {
 
-        List<String> cwdFiles = Utils.plainFilenamesIn(Repository.CWD);
         String currentCommitID = CommitTree.currentCommit();
         Commit currentCommit = Commit.returnCommit(currentCommitID);
 
         // File is staged for removal -> restore file in CWD and add to current commit
         if (removalStage.contains(filename)) {
             removalStage.remove(filename);
+            dirty = true;
             currentCommit.putFileInCWD(filename);
-            Blob newBlob = Blob.returnBlob(filename);
-            currentCommit.filesInCommit.put(filename, newBlob.hash());
             return;
         }
 
         // File isn't in CWD [FAILURE CASE]
-        if (cwdFiles == null || !cwdFiles.contains(filename)) {
-            System.out.println("File does not exist.");
-            return;
+        if (!WorkingTree.isFile(filename)) {
+            throw Utils.error("File does not exist.");
         }
 
-        Blob newBlob = Blob.returnBlob(filename);
+        Blob newBlob = Blob.returnBlob(filename, hashFile(filename));
         // File version is already in current commit [FAILURE CASE]
         if (currentCommit.isCommitVersion(filename, newBlob.hash())) {
             if (additionStage != null == additionStage.containsKey(filename)) {
                 additionStage.remove(filename);
+                dirty = true;
             }
             return;
         }
 
-        // File is already staged [FAILURE CASE]
+        // Save blob (skipped when the same contents are already stored), as a delta
+        // against the committed version when possible
+        newBlob.saveBlob(currentCommit.getFiles().get(filename));
+        dirty = true;
+
+        // File is already staged -> point it at the new version
         if (additionStage != null) {
             if (additionStage.containsKey(filename)) {
                 additionStage.replace(filename, newBlob.hash());
@@ -87,8 +255,7 @@ public class Stage implements Serializable {
             }
         }
 
-        // Add file to addition staging area and save blob
-        newBlob.saveBlob();
+        // Add file to addition staging area
         additionStage.put(filename, newBlob.hash());
 
     }
@@ -103,20 +270,19 @@ public class Stage implements Serializable {
 
         // Current commit isn't tracking any file [FAILURE CASE]
         if (currentCommit.getFiles() == null) {
-            System.out.println("No reason to remove the file.");
-            return;
+            throw Utils.error("No reason to remove the file.");
         }
 
         // File isn't tracked or staged [FAILURE CASE]
         if (!currentCommit.getFiles().containsKey(filename) && !additionStage.containsKey(filename)) {
-            System.out.println("No reason to remove the file.");
-            return;
+            throw Utils.error("No reason to remove the file.");
         }
 
         // File is tracked -> delete from CWD
+        dirty = true;
         boolean isTracked = false;
         if (currentCommit.getFiles().containsKey(filename)) {
-            Utils.restrictedDelete(filename);
+            WorkingTree.delete(filename);
             isTracked = true;
         }
 
@@ -135,52 +301,39 @@ public class Stage implements Serializable {
     /**
      * Performs the status function
      */
-    public void printStatus() {
-        // Print branch status
-        System.out.println("=== Branches ===");
-        List<String> branches = Utils.plainFilenamesIn(Repository.BRANCHES);
-        for (String branch: branches) {
-            if (Utils.readContentsAsString(Repository.HEAD).equals(branch)) {
-                System.out.print("*");
-            }
-            System.out.println(branch);
-        }
-
-        // Addition stage
-        System.out.println("\n=== Staged Files ===");
-        if (additionStage != null) {
-            for (String file: additionStage.keySet()) {
-                System.out.println(file);
-            }
-        }
-
-        // Removal stage
-        System.out.println("\n=== Removed Files ===");
-        if (removalStage != null) {
-            for (String file : removalStage) {
-                System.out.println(file);
-            }
-        }
+    public Status status() {
+        // Branch status
+        Refs refs = Refs.get();
+        List<String> branches = refs.branches();
+        String currentBranch = refs.head();
 
         // Modified non-staged files
-        System.out.println("\n=== Modifications Not Staged For Commit ===");
-        List<String> cwdFiles = Utils.plainFilenamesIn(Repository.CWD);
+        List<Status.Change> changes = new ArrayList<>();
+        Set<String> cwdFiles = new HashSet<>(WorkingTree.files());
         Commit currentCommit = Commit.returnCommit(CommitTree.currentCommit());
         TreeMap<String, String> trackedFiles = currentCommit.getFiles();
 
+        // Hash every tracked, unstaged file still in CWD up front, in parallel
+        List<String> toHash = new ArrayList<>();
+        for (String file : trackedFiles.keySet()) {
+            if (cwdFiles.contains(file) && !additionStage.containsKey(file)) {
+                toHash.add(file);
+            }
+        }
+        Map<String, String> hashes = hashFiles(toHash);
+
         // Iterating over tracked files
         for (Map.Entry<String, String> entry : trackedFiles.entrySet()) {
             String key = entry.getKey();
             String value = entry.getValue();
 
             if (cwdFiles.contains(key)) {
-                Blob cwdFileBlob = Blob.returnBlob(key);
-                if (!(cwdFileBlob.hash().equals(value)) && !(additionStage.containsKey(key))) {
-                    System.out.println(key + " (modified)");
+                if (!(additionStage.containsKey(key)) && !(hashes.get(key).equals(value))) {
+                    changes.add(new Status.Change(key, false));
                 }
             } else {
                 if (!(removalStage.contains(key))) {
-                    System.out.println(key + " (deleted)");
+                    changes.add(new Status.Change(key, true));
                 }
             }
         }
@@ -191,42 +344,44 @@ public class Stage implements Serializable {
             String value = entry.getValue();
 
             if (cwdFiles.contains(key)) {
-                Blob cwdFileBlob = Blob.returnBlob(key);
-                if (!(cwdFileBlob.hash().equals(value)) && !(additionStage.containsKey(key))) {
-                    System.out.println(key + " (modified)");
+                if (!(additionStage.containsKey(key)) && !(hashes.get(key).equals(value))) {
+                    changes.add(new Status.Change(key, false));
                 }
             } else {
-                System.out.println(key + " (deleted)");
+                changes.add(new Status.Change(key, true));
 
             }
         }
 
 
+        // Forget stat data of files that are gone
+        if (statCache.keySet().retainAll(cwdFiles)) {
+            dirty = true;
+        }
+
         // Untracked files
-        System.out.println("\n=== Untracked Files ===");
         List<String> untracked = this.getUntrackedFiles();
-        if (untracked != null) {
-            for (String file: untracked) {
-                System.out.println(file);
-            }
+        if (untracked == null) {
+            untracked = new ArrayList<>();
         }
-        System.out.println();
-        this.untrackedFiles.clear();
-
+        return new Status(branches, currentBranch, new ArrayList<>(additionStage.keySet()),
+                new ArrayList<>(removalStage), changes, untracked);
     }
 
     /**
-     * This method returns the list of files in CWD that haven't been staged or committed
+     * This method returns the list of files in CWD (and its subdirectories) that haven't been
+     * staged or committed
      * [HELPER METHOD]
      * */
     public List<String> getUntrackedFiles() {
         String currentCommitID = CommitTree.currentCommit();
         Commit currentCommit = Commit.returnCommit(currentCommitID);
-        List<String> filesInCWD = Utils.plainFilenamesIn(Repository.CWD);
+        List<String> filesInCWD = WorkingTree.files();
 
         if (currentCommit.getFiles() == null && additionStage == null) {
             return filesInCWD;
         }
+        List<String> untrackedFiles = new ArrayList<>();
         for (String file: filesInCWD) {
             if (!currentCommit.getFiles().containsKey(file) && !additionStage.containsKey(file)) {
                 untrackedFiles.add(file);
@@ -236,14 +391,171 @@ public class Stage implements Serializable {
     }
 
 
+    /**
+     * Returns the blob id of the working file FILENAME. The file is only read and hashed if
+     * its size, mtime or inode changed since it was last hashed, or if it was modified too
+     * close to that time for its mtime to be trusted.
+     * [HELPER METHOD]
+     * */
+    public String hashFile(String filename) {
+        StatEntry cached = statCache.get(filename);
+        StatEntry stat = StatEntry.hash(WorkingTree.file(filename), cached, Hashing.objectFormat());
+        if (stat != cached) {
+            recordStat(filename, stat);
+        }
+        return stat.hash;
+    }
+
+    /**
+     * Returns the blob ids of the working files FILENAMES, as hashFile would. Files are hashed
+     * on status.parallelism threads (the number of processors by default).
+     * [HELPER METHOD]
+     * */
+    public Map<String, String> hashFiles(Collection<String> filenames) {
+        return hashFiles(filenames,
+                Config.getInt("status.parallelism", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /** Returns the blob ids of the working files FILENAMES, hashed on PARALLELISM threads */
+    Map<String, String> hashFiles(Collection<String> filenames, int parallelism) {
+        String[] paths = filenames.toArray(new String[0]);
+        File[] files = new File[paths.length];
+        StatEntry[] cached = new StatEntry[paths.length];
+        for (int i = 0; i < paths.length; i += 1) {
+            files[i] = WorkingTree.file(paths[i]);
+            cached[i] = statCache.get(paths[i]);
+        }
+        StatEntry[] results = new StatEntry[paths.length];
+        // Worker threads have no repository bound, so they are told how to hash
+        Hashing.Algorithm format = Hashing.objectFormat();
+        HashTask task = new HashTask(files, cached, results, 0, paths.length, format);
+        if (parallelism <= 1 || paths.length <= 1) {
+            for (int i = 0; i < paths.length; i += 1) {
+                results[i] = StatEntry.hash(files[i], cached[i], format);
+            }
+        } else {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(task);
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        // The stat cache is only updated here, on this thread
+        Map<String, String> hashes = new HashMap<>();
+        for (int i = 0; i < paths.length; i += 1) {
+            if (results[i] != cached[i]) {
+                recordStat(paths[i], results[i]);
+            }
+            hashes.put(paths[i], results[i].hash);
+        }
+        return hashes;
+    }
+
+    /** Records STAT as the stat data of the working file FILENAME */
+    void recordStat(String filename, StatEntry stat) {
+        statCache.put(filename, stat);
+        dirty = true;
+    }
+
+    /** Marks this as changed, so it is written back to INDEX */
+    public void markDirty() {
+        dirty = true;
+    }
+
+    /** [HELPER METHOD] Returns the length of the common prefix of A and B, at most 65535 */
+    private static int commonPrefix(byte[] a, byte[] b) {
+        int limit = Math.min(Math.min(a.length, b.length), 0xFFFF);
+        int i = 0;
+        while (i < limit && a[i] == b[i]) {
+            i += 1;
+        }
+        return i;
+    }
+
+    /** [HELPER METHOD] Writes the contents of OUT to CHANNEL and DIGEST, and clears it */
+    private static void flush(FileChannel channel, Hashing.Hasher digest, ByteBuffer out) throws IOException {
+        out.flip();
+        digest.update(out.duplicate());
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    /** [HELPER METHOD] Reads an id stored as its length and binary form */
+    private static String readID(ByteBuffer in) {
+        byte[] bytes = new byte[Byte.toUnsignedInt(in.get())];
+        in.get(bytes);
+        return Utils.toHex(bytes);
+    }
+
     /**
      * This method empties addition and removal collections
      * [HELPER METHOD]
      * */
     public void clearStagingArea() {
+        if (!additionStage.isEmpty() || !removalStage.isEmpty()) {
+            dirty = true;
+        }
         additionStage.clear();
         removalStage.clear();
     }
 
+    /** Stat data of a working file and the hash of its contents at that time */
+    static class StatEntry implements Serializable {
+        /** Fixed so index files holding serialized entries still deserialize */
+        private static final long serialVersionUID = 7406812738384158853L;
+        /** size in bytes */
+        long size;
+        /** last modification time in ms */
+        long mtime;
+        /** inode number, or 0 where the filesystem doesn't have one */
+        long inode;
+        /** blob id of the contents */
+        String hash;
+        /** when the contents were hashed, in ms */
+        long hashedAt;
+
+        /** Returns the current stat data of FILE, without a hash */
+        static StatEntry of(File file) {
+            StatEntry entry = new StatEntry();
+            entry.hashedAt = System.currentTimeMillis();
+            try {
+                Map<String, Object> attributes;
+                try {
+                    attributes = Files.readAttributes(file.toPath(), "unix:size,lastModifiedTime,ino");
+                } catch (UnsupportedOperationException | IllegalArgumentException e) {
+                    attributes = Files.readAttributes(file.toPath(), "size,lastModifiedTime");
+                }
+                entry.size = (Long) attributes.get("size");
+                entry.mtime = ((FileTime) attributes.get("lastModifiedTime")).toMillis();
+                Object inode = attributes.get("ino");
+                entry.inode = inode == null ? 0 : (Long) inode;
+            } catch (IOException excp) {
+                throw new IllegalArgumentException(excp.getMessage());
+            }
+            return entry;
+        }
+
+        /** Returns the stat data and hash (made with FORMAT) of the working file FILE: CACHED
+         *  (which may be null) if its hash can be reused, new stat data otherwise. Only uses
+         *  its arguments, not the repository, so it may run on any thread. */
+        static StatEntry hash(File file, StatEntry cached, Hashing.Algorithm format) {
+            StatEntry stat = of(file);
+            if (cached != null && cached.sameStat(stat) && cached.mtime < cached.hashedAt - RACY_WINDOW) {
+                return cached;
+            }
+            stat.hash = Blob.hash(file, format);
+            return stat;
+        }
+
+        /** Returns true if OTHER has the same size, mtime and inode */
+        boolean sameStat(StatEntry other) {
+            return size == other.size && mtime == other.mtime && inode == other.inode;
+        }
+    }
+
 
 }
@@ -0,0 +1,81 @@
+package gitlet;
+
+import java.util.List;
+
+/** The state of the repository as shown by status.
+ *  @author procrastin
+ */
+public class Status {
+
+    /** A working file that differs from what would be committed, without being staged */
+    public static class Change {
+        private final String path;
+        private final boolean deleted;
+
+        Change(String path, boolean deleted) {
+            this.path = path;
+            this.deleted = deleted;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        /** Returns true if the file was deleted, false if it was modified */
+        public boolean isDeleted() {
+            return deleted;
+        }
+
+        /** Returns the change as status prints it */
+        @Override
+        public String toString() {
+            return path + (deleted ? " (deleted)" : " (modified)");
+        }
+    }
+
+    private final List<String> branches;
+    private final String currentBranch;
+    private final List<String> staged;
+    private final List<String> removed;
+    private final List<Change> changes;
+    private final List<String> untracked;
+
+    Status(List<String> branches, String currentBranch, List<String> staged, List<String> removed,
+           List<Change> changes, List<String> untracked) {
+        this.branches = branches;
+        this.currentBranch = currentBranch;
+        this.staged = staged;
+        this.removed = removed;
+        this.changes = changes;
+        this.untracked = untracked;
+    }
+
+    /** Returns the names of all branches, in order */
+    public List<String> getBranches() {
+        return branches;
+    }
+
+    public String getCurrentBranch() {
+        return currentBranch;
+    }
+
+    /** Returns the files staged for addition, in order */
+    public List<String> getStaged() {
+        return staged;
+    }
+
+    /** Returns the files staged for removal */
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    /** Returns the modified or deleted files that aren't staged */
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    /** Returns the working files that are neither tracked nor staged, in order */
+    public List<String> getUntracked() {
+        return untracked;
+    }
+}
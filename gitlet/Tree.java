@@ -0,0 +1,109 @@
+package gitlet;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Tree objects: the files of a commit, one directory per object.
+ *
+ *  A tree lists the entries of one directory in name order, one per line as "<id> <name>".
+ *  Files point at their blob; subdirectories point at another tree and their name ends with
+ *  a '/'. Trees are content-addressed like blobs, so a directory that didn't change between
+ *  two commits is the same object in both, and changing one file only rewrites the trees on
+ *  the path to it.
+ *  @author procrastin
+ */
+public class Tree {
+
+    /** Returns the id of the tree (and writes the trees) holding FILES, a map of
+     *  file path to blob id */
+    public static String write(Map<String, String> files) {
+        return update(null, files);
+    }
+
+    /**
+     * Returns the id of the tree obtained by applying CHANGES to the tree TREEID (null for an
+     * empty tree). CHANGES maps a file path to its new blob id, or to null to remove it.
+     * Only the trees on the paths of the changed files are read and rewritten.
+     */
+    public static String update(String treeID, Map<String, String> changes) {
+        TreeMap<String, String> entries = treeID == null ? new TreeMap<>() : read(treeID);
+
+        // Split changes between files of this directory and changes inside subdirectories
+        Map<String, Map<String, String>> subdirectories = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                if (change.getValue() == null) {
+                    entries.remove(path);
+                } else {
+                    entries.put(path, change.getValue());
+                }
+            } else {
+                String directory = path.substring(0, slash + 1);
+                subdirectories.computeIfAbsent(directory, k -> new TreeMap<>())
+                        .put(path.substring(slash + 1), change.getValue());
+            }
+        }
+
+        // Rewrite each changed subdirectory, dropping the ones left empty
+        for (Map.Entry<String, Map<String, String>> subdirectory : subdirectories.entrySet()) {
+            String name = subdirectory.getKey();
+            String subtree = update(entries.get(name), subdirectory.getValue());
+            if (read(subtree).isEmpty()) {
+                entries.remove(name);
+            } else {
+                entries.put(name, subtree);
+            }
+        }
+        return save(entries);
+    }
+
+    /** Returns every file under the tree TREEID, as a map of file path to blob id */
+    public static TreeMap<String, String> files(String treeID) {
+        TreeMap<String, String> files = new TreeMap<>();
+        addFiles(treeID, "", files);
+        return files;
+    }
+
+    /** Returns the entries of the tree TREEID: name to id, with names of subdirectories
+     *  ending in '/' */
+    public static TreeMap<String, String> read(String treeID) {
+        TreeMap<String, String> entries = new TreeMap<>();
+        String contents = new String(Repository.treeStore().read(treeID), StandardCharsets.UTF_8);
+        for (String line : contents.split("\n")) {
+            int space = line.indexOf(' ');
+            if (space > 0) {
+                entries.put(line.substring(space + 1), line.substring(0, space));
+            }
+        }
+        return entries;
+    }
+
+    /** [HELPER METHOD] Adds the files under the tree TREEID to FILES, prefixing their paths */
+    private static void addFiles(String treeID, String prefix, Map<String, String> files) {
+        for (Map.Entry<String, String> entry : read(treeID).entrySet()) {
+            String name = entry.getKey();
+            if (name.endsWith("/")) {
+                addFiles(entry.getValue(), prefix + name, files);
+            } else {
+                files.put(prefix + name, entry.getValue());
+            }
+        }
+    }
+
+    /** [HELPER METHOD] Writes a tree with ENTRIES, unless it already exists, and returns its id */
+    private static String save(TreeMap<String, String> entries) {
+        StringBuilder contents = new StringBuilder();
+        for (Map.Entry<String, String> entry : entries.entrySet()) {
+            contents.append(entry.getValue()).append(' ').append(entry.getKey()).append('\n');
+        }
+        byte[] bytes = contents.toString().getBytes(StandardCharsets.UTF_8);
+        String id = Hashing.id("tree", bytes);
+        if (!Repository.treeStore().contains(id)) {
+            Repository.treeStore().write(id, bytes);
+        }
+        return id;
+    }
+}
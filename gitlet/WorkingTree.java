@@ -0,0 +1,101 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** The files of the working directory, including those in subdirectories.
+ *
+ *  Files are named by their path relative to Repository.cwd(), with '/' between directories
+ *  (e.g. "src/Main.java") on every platform. The .gitlet directory is never part of it.
+ *  @author procrastin
+ */
+public class WorkingTree {
+
+    /** Returns the paths of all files in the working directory, in lexicographic order */
+    public static List<String> files() {
+        List<String> files = new ArrayList<>();
+        Path root = Repository.cwd().toPath();
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (dir.equals(Repository.gitletDir().toPath())) {
+                        return FileVisitResult.SKIP_SUBTREE;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        files.add(toPath(root.relativize(file)));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    /** Returns true if PATH is a file of the working directory */
+    public static boolean isFile(String path) {
+        return isInside(path) && file(path).isFile();
+    }
+
+    /** Returns the working file at PATH */
+    public static File file(String path) {
+        return Utils.join(Repository.cwd(), path);
+    }
+
+    /** Returns PATH, as typed by the user, in the form used to name files: relative to the
+     *  working directory, '/'-separated, without "." components */
+    public static String normalize(String path) {
+        Path normalized = Repository.cwd().toPath().relativize(
+                Repository.cwd().toPath().resolve(path).normalize());
+        return toPath(normalized);
+    }
+
+    /** Creates the directories the working file PATH goes in, if needed */
+    public static void makeParents(String path) {
+        file(path).getParentFile().mkdirs();
+    }
+
+    /** Deletes the working file PATH, then any directory that deleting it left empty */
+    public static void delete(String path) {
+        if (!isInside(path)) {
+            throw new IllegalArgumentException("not in the working directory");
+        }
+        File file = file(path);
+        if (!file.isFile() || !file.delete()) {
+            return;
+        }
+        File dir = file.getParentFile();
+        while (!dir.equals(Repository.cwd()) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+    /** [HELPER METHOD] Returns true if PATH names something under the working directory,
+     *  outside of .gitlet */
+    private static boolean isInside(String path) {
+        Path resolved = Repository.cwd().toPath().resolve(path).normalize();
+        return resolved.startsWith(Repository.cwd().toPath()) && !resolved.equals(Repository.cwd().toPath())
+                && !resolved.startsWith(Repository.gitletDir().toPath());
+    }
+
+    /** [HELPER METHOD] Returns the '/'-separated form of the relative path PATH */
+    private static String toPath(Path path) {
+        return path.toString().replace(File.separatorChar, '/');
+    }
+}